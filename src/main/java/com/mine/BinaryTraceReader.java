@@ -0,0 +1,103 @@
+package com.mine;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Reads traces written by {@link BinaryTraceWriter}. Each block is decoded into primitive arrays in one go, and
+ * `next` then walks through those arrays.
+ */
+public class BinaryTraceReader implements TraceReader {
+
+    private final DataInputStream in;
+    private final VarintBuffer functionColumn = new VarintBuffer(BinaryTraceWriter.BLOCK_SIZE * 2);
+    private final VarintBuffer timeColumn = new VarintBuffer(BinaryTraceWriter.BLOCK_SIZE * 2);
+    private final VarintBuffer durationColumn = new VarintBuffer(BinaryTraceWriter.BLOCK_SIZE * 2);
+    private final int[] functionIds = new int[BinaryTraceWriter.BLOCK_SIZE];
+    private final int[] dirs = new int[BinaryTraceWriter.BLOCK_SIZE];
+    private final long[] times = new long[BinaryTraceWriter.BLOCK_SIZE];
+    private final long[] durations = new long[BinaryTraceWriter.BLOCK_SIZE];
+    private int blockEvents = 0;
+    private int index = 0;
+
+    public BinaryTraceReader(String path) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(path), 1 << 16));
+        if (in.readInt() != BinaryTraceWriter.MAGIC) {
+            in.close();
+            throw new IOException("Not a binary trace: " + path);
+        }
+        int version = in.readInt();
+        if (version != BinaryTraceWriter.VERSION) {
+            in.close();
+            throw new IOException("Unsupported binary trace version " + version + ": " + path);
+        }
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        index++;
+        if (index < blockEvents) return true;
+        if (!readBlock()) return false;
+        index = 0;
+        return true;
+    }
+
+    @Override
+    public int getFunctionId() {
+        return functionIds[index];
+    }
+
+    @Override
+    public int getDir() {
+        return dirs[index];
+    }
+
+    @Override
+    public long getTime() {
+        return times[index];
+    }
+
+    @Override
+    public long getDuration() {
+        return durations[index];
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private boolean readBlock() throws IOException {
+        int events;
+        try {
+            events = in.readInt();
+        } catch (EOFException e) {
+            blockEvents = 0;
+            return false;
+        }
+        if (events <= 0 || events > BinaryTraceWriter.BLOCK_SIZE) {
+            throw new IOException("Corrupt binary trace block of " + events + " events");
+        }
+        int functionBytes = in.readInt();
+        int timeBytes = in.readInt();
+        int durationBytes = in.readInt();
+        functionColumn.readFrom(in, functionBytes);
+        timeColumn.readFrom(in, timeBytes);
+        durationColumn.readFrom(in, durationBytes);
+
+        long time = 0;
+        for (int i = 0; i < events; i++) {
+            long packedFunction = functionColumn.readUnsigned();
+            functionIds[i] = (int) (packedFunction >>> 1);
+            dirs[i] = (int) (packedFunction & 1);
+            time += timeColumn.readSigned();
+            times[i] = time;
+            durations[i] = durationColumn.readUnsigned();
+        }
+        blockEvents = events;
+        return true;
+    }
+}
@@ -0,0 +1,98 @@
+package com.mine;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes traces in the binary columnar format read by {@link BinaryTraceReader}.
+ *
+ * The file starts with a magic number and a version, followed by blocks of up to BLOCK_SIZE events. Each block is
+ * a header of four ints (the event count and the byte length of each column) followed by three varint columns:
+ * 1. the function id and direction packed as `functionId << 1 | dir`,
+ * 2. the timestamps, each stored as the zigzag encoded delta from the previous timestamp in the block,
+ * 3. the durations.
+ *
+ * Deltas restart at 0 on every block, so blocks can be decoded independently of one another.
+ */
+public class BinaryTraceWriter implements Closeable {
+
+    static final int MAGIC = 0x4d545243; // "MTRC"
+    static final int VERSION = 1;
+    static final int BLOCK_SIZE = 1 << 16;
+
+    private final DataOutputStream out;
+    private final VarintBuffer functionColumn = new VarintBuffer(BLOCK_SIZE * 2);
+    private final VarintBuffer timeColumn = new VarintBuffer(BLOCK_SIZE * 2);
+    private final VarintBuffer durationColumn = new VarintBuffer(BLOCK_SIZE * 2);
+    private int blockEvents = 0;
+    private long previousTime = 0;
+
+    public BinaryTraceWriter(String path) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    public void write(int functionId, int dir, long time, long duration) throws IOException {
+        if (functionId < 0 || (dir != 0 && dir != 1)) {
+            throw new IllegalArgumentException("Cannot encode event (" + functionId + ", " + dir + ")");
+        }
+        functionColumn.writeUnsigned(((long) functionId << 1) | dir);
+        timeColumn.writeSigned(time - previousTime);
+        durationColumn.writeUnsigned(duration);
+        previousTime = time;
+
+        blockEvents++;
+        if (blockEvents == BLOCK_SIZE) flushBlock();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (blockEvents > 0) flushBlock();
+        out.close();
+    }
+
+    private void flushBlock() throws IOException {
+        out.writeInt(blockEvents);
+        out.writeInt(functionColumn.size());
+        out.writeInt(timeColumn.size());
+        out.writeInt(durationColumn.size());
+        functionColumn.writeTo(out);
+        timeColumn.writeTo(out);
+        durationColumn.writeTo(out);
+
+        functionColumn.clear();
+        timeColumn.clear();
+        durationColumn.clear();
+        blockEvents = 0;
+        previousTime = 0;
+    }
+
+    /**
+     * Converts a text trace into the binary format. The binary trace is written to a temporary file that is only
+     * moved into place once it's complete, since a truncated one ending on a block boundary would read as a shorter
+     * trace.
+     */
+    public static void convert(String tracePath, String binaryPath) throws IOException {
+        Path temporary = Paths.get(binaryPath + ".tmp");
+        try {
+            try (TraceReader reader = new MappedTraceReader(tracePath);
+                 BinaryTraceWriter writer = new BinaryTraceWriter(temporary.toString())) {
+                while (reader.next()) {
+                    writer.write(reader.getFunctionId(), reader.getDir(), reader.getTime(), reader.getDuration());
+                }
+            }
+            Files.move(temporary, Paths.get(binaryPath),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+}
@@ -5,17 +5,50 @@ public class Constants {
         ANALYZE,
         MINE,
         SPACE_FIX,
+        CONVERT,
+        STREAM,
+    }
+
+    public enum InstanceMode {
+        INTERVALS, // Keep the interval of every pattern instance
+        AGGREGATE, // Only keep duration statistics of the instances of each pattern
+        BOTH,
+    }
+
+    public enum VerificationLevel {
+        OFF,
+        SAMPLED, // Check a sample of the instances, and not their occurrence counts
+        FULL,
+    }
+
+    public enum PatternFormat {
+        JSON,
+        BINARY, // Read by the analyzer in place of JSON when present
     }
 
     // Configurations
     public static final int START_THREAD = 1;
     public static final int END_THREAD = 1;
+    public static final int MINING_THREADS = 1; // Threads mined at once. Pattern ids depend on mining order when > 1.
+    public static final long SNAPSHOT_EVENTS = 10000000; // Events between pattern snapshots when streaming
+    public static final long SNAPSHOT_SECONDS = 60; // Seconds between pattern snapshots when streaming
+    public static final PatternFormat PATTERN_FORMAT = PatternFormat.BINARY; // Format of the thread pattern files
+    public static final InstanceMode INSTANCE_MODE = InstanceMode.INTERVALS; // What is kept of pattern instances
+    public static final long INSTANCE_HEAP_BUDGET = 1L << 30; // Bytes of intervals each thread keeps before spilling
 
     // Directories
     public static final String DATA_DIR = "data/";
     public static final String TEST_DATA_DIR = "src/test/data/";
     public static final String THREAD_DIR = DATA_DIR + "threads/";
     public static final String PATTERN_DIR = DATA_DIR + "patterns/";
+    public static final String SPILL_DIR = DATA_DIR + "spill/";
+
+    // File extensions
+    public static final String TRACE_EXTENSION = ".trace";
+    public static final String BINARY_TRACE_EXTENSION = ".btrace";
+    public static final String PATTERN_EXTENSION = ".patterns";
+    public static final String BINARY_PATTERN_EXTENSION = ".bpatterns";
+    public static final String STREAM_PATTERNS_FILE = "stream.patterns";
 
     // Shared
     public static final int PATTERN_BASE = 10000; // Used when serializing patterns
@@ -27,6 +60,13 @@ public class Constants {
     // Compressed sequence subtrace representation
     public static final int BASE_FUNCTION_ID = 1000;
     public static final int PATTERN_SIMILARITY_THRESHOLD = 1;
+    public static final boolean METRIC_TREE_INDEX = true; // Search patterns with metric trees rather than by depth
+    public static final boolean SINGLE_PRECISION_DISTANCES = true; // Store pattern distances as floats
+    public static final boolean MAPPED_DISTANCE_MAP = false; // Keep pattern distances in a memory-mapped file
+    public static final boolean LAZY_DISTANCE_MAP = false; // Compute pattern distances only once they're looked up
+    public static final long DISTANCE_CACHE_SIZE = 1L << 24; // Distances cached by the lazy distance map
+    public static final boolean SPARSE_DISTANCE_MAP = false; // Only store pattern distances below the cap
+    public static final double SPARSE_DISTANCE_CAP = 8.0; // Exact matching for subtraces up to twice this deep
 
     // Occurance set subtrace representation
 
@@ -38,4 +78,9 @@ public class Constants {
     public static final int DEBUG = 1;
 
     public static int RUN_MODE = NORMAL;
+
+    // Verification of pattern instances, selected with -Dverification=off|sampled|full
+    public static VerificationLevel VERIFICATION =
+            VerificationLevel.valueOf(System.getProperty("verification", "full").toUpperCase());
+    public static final int VERIFICATION_SAMPLE_RATE = 64; // Instances per instance checked when sampled
 }
@@ -1,8 +1,6 @@
 package com.mine;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -13,8 +11,7 @@ public class Main {
         PatternManager manager = new PatternManager(new PatternManager.PatternDistances(new ArrayList<>()));
 
         for (int i = 1;; i++) {
-            BufferedReader reader = new BufferedReader(
-                new FileReader(Constants.THREAD_DIR + "thread." + String.valueOf(i) + ".trace"));
+            TraceReader reader = new MappedTraceReader(Constants.THREAD_DIR + "thread." + String.valueOf(i) + ".trace");
 
             System.out.println("Starting to mine thread: " + String.valueOf(i));
 
@@ -0,0 +1,151 @@
+package com.mine;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the text trace format described in the README, `{function} \t {exit} \t {time} \t {duration} \n`, by
+ * memory mapping the file and parsing the fields straight out of the mapped bytes.
+ *
+ * A single mapping can't exceed 2GB, so the file is mapped one window at a time. When a line straddles the end of
+ * a window, the next window is mapped starting from the beginning of that line and the line is parsed again.
+ */
+public class MappedTraceReader implements TraceReader {
+
+    private static final long WINDOW_SIZE = 1L << 28;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private MappedByteBuffer buffer;
+    private long windowStart;
+    private int position;
+
+    private int functionId;
+    private int dir;
+    private long time;
+    private long duration;
+    private long fieldValue;
+
+    public MappedTraceReader(String path) throws IOException {
+        channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        fileSize = channel.size();
+        mapWindow(0);
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        while (true) {
+            // Skip empty lines
+            int limit = buffer.limit();
+            while (position < limit && isLineEnd(buffer.get(position))) position++;
+
+            if (position == limit) {
+                if (isLastWindow()) return false;
+                mapWindow(windowStart + position);
+                continue;
+            }
+
+            int lineStart = position;
+            if (parseLine()) return true;
+
+            // The line was cut off by the end of the window
+            mapWindow(windowStart + lineStart);
+        }
+    }
+
+    @Override
+    public int getFunctionId() {
+        return functionId;
+    }
+
+    @Override
+    public int getDir() {
+        return dir;
+    }
+
+    @Override
+    public long getTime() {
+        return time;
+    }
+
+    @Override
+    public long getDuration() {
+        return duration;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void mapWindow(long start) throws IOException {
+        windowStart = start;
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, fileSize - start));
+        position = 0;
+    }
+
+    private boolean isLastWindow() {
+        return windowStart + buffer.limit() >= fileSize;
+    }
+
+    /**
+     * Parses the line starting at `position`, leaving `position` at the start of the following line. Returns false
+     * if the window ends before the line does.
+     */
+    private boolean parseLine() throws IOException {
+        long lineOffset = windowStart + position;
+        boolean complete = parseField();
+        functionId = (int) fieldValue;
+        complete = complete && parseField();
+        dir = (int) fieldValue;
+        complete = complete && parseField();
+        time = fieldValue;
+        duration = complete && parseField() ? fieldValue : 0;
+
+        // Skip anything else on the line, such as trailing tabs or a carriage return
+        int limit = buffer.limit();
+        while (position < limit && buffer.get(position) != '\n') position++;
+        if (position == limit && !isLastWindow()) return false;
+        if (!complete) throw new IOException("Malformed trace line at byte " + lineOffset);
+        if (position < limit) position++;
+        return true;
+    }
+
+    /**
+     * Parses the next tab separated integer on the current line into `fieldValue`. Returns false if there are no
+     * more fields on the line.
+     */
+    private boolean parseField() {
+        int limit = buffer.limit();
+        while (position < limit && isFieldSeparator(buffer.get(position))) position++;
+
+        boolean negative = false;
+        if (position < limit && buffer.get(position) == '-') {
+            negative = true;
+            position++;
+        }
+
+        int digitsStart = position;
+        long value = 0;
+        while (position < limit) {
+            byte b = buffer.get(position);
+            if (b < '0' || b > '9') break;
+            value = value * 10 + (b - '0');
+            position++;
+        }
+
+        fieldValue = negative ? -value : value;
+        return position > digitsStart;
+    }
+
+    private static boolean isFieldSeparator(byte b) {
+        return b == '\t' || b == ' ';
+    }
+
+    private static boolean isLineEnd(byte b) {
+        return b == '\n' || b == '\r';
+    }
+}
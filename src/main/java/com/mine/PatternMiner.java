@@ -1,6 +1,5 @@
 package com.mine;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.util.ArrayList;
 
@@ -22,25 +21,15 @@ public class PatternMiner {
     }
 
     /**
-     * Reads every line from the thread and adds any pattern that it detects into the pattern manager.
+     * Reads every event from the thread and adds any pattern that it detects into the pattern manager.
      */ 
-    public void mineThread(BufferedReader reader) throws IOException {
-        String line = reader.readLine();
-
+    public void mineThread(TraceReader reader) throws IOException {
         int count = 0;
-        while (line != null) {
+        while (reader.next()) {
             if (count % 1000000 == 0) System.out.println(count);
             count++;
 
-            String[] record = line.split("\t");
-            
-            int functionID = Integer.parseInt(record[0]);
-            int dir = Integer.parseInt(record[1]);
-            long time = Long.parseLong(record[2]);
-
-            processEvent(functionID, dir, time);
-
-            line = reader.readLine();
+            processEvent(reader.getFunctionId(), reader.getDir(), reader.getTime());
         }
     }
 
@@ -0,0 +1,205 @@
+package com.mine;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads and decodes another TraceReader on a background thread, so that parsing the trace overlaps with mining it.
+ *
+ * The reader thread decodes events into batches of primitive arrays and hands them to the consumer. A fixed set of
+ * batches is allocated up front and cycles between the two threads, so this is a ring buffer of batches and
+ * nothing is allocated while reading. The time each side spends waiting on the other is recorded, which shows
+ * whether reading or mining is the bottleneck.
+ */
+public class PipelinedTraceReader implements TraceReader {
+
+    private static final int BATCH_SIZE = 4096;
+    private static final int BATCHES = 16;
+
+    private static class EventBatch {
+        final int[] functionIds = new int[BATCH_SIZE];
+        final int[] dirs = new int[BATCH_SIZE];
+        final long[] times = new long[BATCH_SIZE];
+        final long[] durations = new long[BATCH_SIZE];
+        int size;
+        boolean last;
+    }
+
+    private final TraceReader source;
+    private final BlockingQueue<EventBatch> freeBatches = new ArrayBlockingQueue<>(BATCHES);
+    private final BlockingQueue<EventBatch> fullBatches = new ArrayBlockingQueue<>(BATCHES);
+    private final Thread readerThread;
+    private volatile Throwable readerFailure;
+
+    private EventBatch batch;
+    private int index = 0;
+    private boolean finished = false;
+
+    private final long startTime = System.nanoTime();
+    private volatile long readerEndTime = 0;
+    private volatile long readerWaitNanos = 0;
+    private long minerEndTime = 0;
+    private long minerWaitNanos = 0;
+
+    public PipelinedTraceReader(TraceReader source) {
+        this.source = source;
+        for (int i = 0; i < BATCHES; i++) {
+            freeBatches.add(new EventBatch());
+        }
+        readerThread = new Thread(this::readEvents, "trace-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (finished) return false;
+        index++;
+        while (batch == null || index >= batch.size) {
+            if (batch != null) {
+                if (batch.last) {
+                    finished = true;
+                    minerEndTime = System.nanoTime();
+                    rethrowReaderFailure();
+                    return false;
+                }
+                freeBatches.add(batch);
+            }
+            batch = takeFullBatch();
+            index = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public int getFunctionId() {
+        return batch.functionIds[index];
+    }
+
+    @Override
+    public int getDir() {
+        return batch.dirs[index];
+    }
+
+    @Override
+    public long getTime() {
+        return batch.times[index];
+    }
+
+    @Override
+    public long getDuration() {
+        return batch.durations[index];
+    }
+
+    /**
+     * Stops the reader thread if the trace wasn't read to the end, and closes the underlying reader.
+     */
+    @Override
+    public void close() throws IOException {
+        if (minerEndTime == 0) minerEndTime = System.nanoTime();
+        readerThread.interrupt();
+        try {
+            readerThread.join();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while stopping the trace reader");
+        }
+        source.close();
+    }
+
+    /**
+     * The fraction of its running time that the reading stage spent working rather than waiting for free batches.
+     */
+    public double getReaderUtilization() {
+        long endTime = readerEndTime != 0 ? readerEndTime : System.nanoTime();
+        return utilization(readerWaitNanos, endTime - startTime);
+    }
+
+    /**
+     * The fraction of its running time that the mining stage spent working rather than waiting for decoded events.
+     */
+    public double getMinerUtilization() {
+        long endTime = minerEndTime != 0 ? minerEndTime : System.nanoTime();
+        return utilization(minerWaitNanos, endTime - startTime);
+    }
+
+    public String utilizationString() {
+        return String.format("reading stage busy %.1f%%, mining stage busy %.1f%%",
+                100 * getReaderUtilization(), 100 * getMinerUtilization());
+    }
+
+    private static double utilization(long waitNanos, long elapsedNanos) {
+        return elapsedNanos > 0 ? 1 - (double) waitNanos / elapsedNanos : 0;
+    }
+
+    private EventBatch takeFullBatch() throws IOException {
+        EventBatch fullBatch = fullBatches.poll();
+        if (fullBatch != null) return fullBatch;
+        long waitStart = System.nanoTime();
+        try {
+            fullBatch = fullBatches.take();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while waiting for trace events");
+        }
+        minerWaitNanos += System.nanoTime() - waitStart;
+        return fullBatch;
+    }
+
+    /**
+     * Throws what made the reader thread stop, if anything did, on the mining thread.
+     */
+    private void rethrowReaderFailure() throws IOException {
+        Throwable failure = readerFailure;
+        if (failure instanceof IOException) throw (IOException) failure;
+        if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+        if (failure instanceof Error) throw (Error) failure;
+    }
+
+    private EventBatch takeFreeBatch() throws InterruptedException {
+        EventBatch freeBatch = freeBatches.poll();
+        if (freeBatch != null) return freeBatch;
+        long waitStart = System.nanoTime();
+        freeBatch = freeBatches.take();
+        readerWaitNanos += System.nanoTime() - waitStart;
+        return freeBatch;
+    }
+
+    /**
+     * Runs on the reader thread until the trace is exhausted, reading fails, or the reader is closed. Whatever makes
+     * reading fail is kept for `next` to throw, and the batch being filled is still handed over as the last one, so
+     * the consumer never waits for a batch that won't come.
+     */
+    private void readEvents() {
+        EventBatch freeBatch = null;
+        try {
+            boolean more = true;
+            while (more) {
+                freeBatch = takeFreeBatch();
+                freeBatch.size = 0;
+                while (freeBatch.size < BATCH_SIZE && (more = source.next())) {
+                    int i = freeBatch.size;
+                    freeBatch.functionIds[i] = source.getFunctionId();
+                    freeBatch.dirs[i] = source.getDir();
+                    freeBatch.times[i] = source.getTime();
+                    freeBatch.durations[i] = source.getDuration();
+                    freeBatch.size++;
+                }
+                freeBatch.last = !more;
+                fullBatches.put(freeBatch);
+                freeBatch = null;
+            }
+        } catch (InterruptedException e) {
+            // The consumer stopped reading early
+        } catch (IOException | RuntimeException | Error e) {
+            readerFailure = e;
+        } finally {
+            readerEndTime = System.nanoTime();
+            if (freeBatch != null) {
+                // There is room for every batch in the queue, so this never blocks
+                freeBatch.last = true;
+                fullBatches.offer(freeBatch);
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.mine;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the text trace format from a stream, such as stdin or a named pipe, as the tracer produces it. Bytes are
+ * read into a fixed buffer and the fields parsed out of it, so like {@link MappedTraceReader} this doesn't allocate
+ * per event. `next` blocks until a whole line is available.
+ */
+public class StreamTraceReader implements TraceReader {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+    private boolean endOfStream = false;
+
+    private int functionId;
+    private int dir;
+    private long time;
+    private long duration;
+    private long fieldValue;
+
+    public StreamTraceReader(InputStream in) {
+        this.in = in;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        while (true) {
+            // Skip empty lines
+            while (position < limit && (buffer[position] == '\n' || buffer[position] == '\r')) position++;
+
+            int lineEnd = position;
+            while (lineEnd < limit && buffer[lineEnd] != '\n') lineEnd++;
+
+            if (lineEnd == limit && !endOfStream) {
+                fill();
+                continue;
+            }
+            if (position == limit) return false;
+
+            parseLine(lineEnd);
+            position = lineEnd < limit ? lineEnd + 1 : limit;
+            return true;
+        }
+    }
+
+    @Override
+    public int getFunctionId() {
+        return functionId;
+    }
+
+    @Override
+    public int getDir() {
+        return dir;
+    }
+
+    @Override
+    public long getTime() {
+        return time;
+    }
+
+    @Override
+    public long getDuration() {
+        return duration;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Moves the unparsed bytes to the front of the buffer and reads more after them.
+     */
+    private void fill() throws IOException {
+        int remaining = limit - position;
+        if (remaining == buffer.length) {
+            throw new IOException("Trace line longer than " + buffer.length + " bytes");
+        }
+        System.arraycopy(buffer, position, buffer, 0, remaining);
+        position = 0;
+        limit = remaining;
+
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read == -1) {
+            endOfStream = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    private void parseLine(int lineEnd) throws IOException {
+        boolean complete = parseField(lineEnd);
+        functionId = (int) fieldValue;
+        complete = complete && parseField(lineEnd);
+        dir = (int) fieldValue;
+        complete = complete && parseField(lineEnd);
+        time = fieldValue;
+        duration = complete && parseField(lineEnd) ? fieldValue : 0;
+        if (!complete) throw new IOException("Malformed trace line");
+    }
+
+    /**
+     * Parses the next tab separated integer before `lineEnd` into `fieldValue`. Returns false if there are no more
+     * fields on the line.
+     */
+    private boolean parseField(int lineEnd) {
+        while (position < lineEnd && (buffer[position] == '\t' || buffer[position] == ' ')) position++;
+
+        boolean negative = false;
+        if (position < lineEnd && buffer[position] == '-') {
+            negative = true;
+            position++;
+        }
+
+        int digitsStart = position;
+        long value = 0;
+        while (position < lineEnd) {
+            byte b = buffer[position];
+            if (b < '0' || b > '9') break;
+            value = value * 10 + (b - '0');
+            position++;
+        }
+
+        fieldValue = negative ? -value : value;
+        return position > digitsStart;
+    }
+}
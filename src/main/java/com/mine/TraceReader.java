@@ -0,0 +1,25 @@
+package com.mine;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Iterates over the events of a thread trace. Each call to `next` advances to the following event, whose fields
+ * are then available through the getters as primitives. Implementations must not allocate per event, since the
+ * traces we mine contain billions of them.
+ */
+public interface TraceReader extends Closeable {
+
+    /**
+     * Advances to the next event. Returns false once the trace is exhausted.
+     */
+    boolean next() throws IOException;
+
+    int getFunctionId();
+
+    int getDir();
+
+    long getTime();
+
+    long getDuration();
+}
@@ -0,0 +1,93 @@
+package com.mine;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer holding LEB128 varints. Signed values are zigzag encoded first so that small negative
+ * numbers (such as the deltas between out of order timestamps) stay small.
+ *
+ * The same buffer is used for writing and reading; `clear` resets it for reuse so that no allocation happens
+ * once the buffer has grown to its working size.
+ */
+public class VarintBuffer {
+
+    private byte[] bytes;
+    private int size;
+    private int position;
+
+    public VarintBuffer() {
+        this(64);
+    }
+
+    public VarintBuffer(int initialCapacity) {
+        bytes = new byte[Math.max(initialCapacity, 16)];
+    }
+
+    public void clear() {
+        size = 0;
+        position = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean hasRemaining() {
+        return position < size;
+    }
+
+    public void writeUnsigned(long value) {
+        ensureCapacity(size + 10);
+        while ((value & ~0x7FL) != 0) {
+            bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[size++] = (byte) value;
+    }
+
+    public void writeSigned(long value) {
+        writeUnsigned((value << 1) ^ (value >> 63));
+    }
+
+    public long readUnsigned() {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = bytes[position++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+            shift += 7;
+        }
+    }
+
+    public long readSigned() {
+        long value = readUnsigned();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Writes the buffered bytes to `out`.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.write(bytes, 0, size);
+    }
+
+    /**
+     * Replaces the contents of this buffer with `length` bytes read from `in`, and rewinds for reading.
+     */
+    public void readFrom(DataInput in, int length) throws IOException {
+        clear();
+        ensureCapacity(length);
+        in.readFully(bytes, 0, length);
+        size = length;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.mine.manager2;
+
+import com.mine.Constants;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Dumps the patterns of a PatternManager2 on a background thread, so that mining doesn't wait on serialization.
+ * The manager handed over must no longer be mined into, which `PatternManager2.snapshot` takes care of, or which
+ * holds once a thread has been mined to the end. Its instances are released once they have been written.
+ *
+ * Each dump is written to a temporary file that then replaces the target, so a reader never sees a partial dump.
+ * Failures are rethrown by the next call to `write` or by `close`.
+ *
+ * Every manager waiting to be written holds on to all of its instances, so `write` blocks while there are already
+ * `maxPendingWrites` dumps queued or being written.
+ */
+public class AsyncPatternWriter implements Closeable {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final List<Future<Void>> pendingWrites = new ArrayList<>();
+    private final int maxPendingWrites;
+
+    public AsyncPatternWriter() {
+        this(Integer.MAX_VALUE);
+    }
+
+    public AsyncPatternWriter(int maxPendingWrites) {
+        this.maxPendingWrites = maxPendingWrites;
+    }
+
+    /**
+     * Whether a previous dump is still being written.
+     */
+    public synchronized boolean isBusy() {
+        for (Future<Void> pendingWrite : pendingWrites) {
+            if (!pendingWrite.isDone()) return true;
+        }
+        return false;
+    }
+
+    public void write(PatternManager2 manager, long absoluteStartTime, boolean verify, String path) throws IOException {
+        write(manager, absoluteStartTime, verify, path, Constants.PatternFormat.JSON);
+    }
+
+    public synchronized void write(
+            PatternManager2 manager,
+            long absoluteStartTime,
+            boolean verify,
+            String path,
+            Constants.PatternFormat format) throws IOException {
+        checkCompletedWrites(pendingWrites.size() - maxPendingWrites + 1);
+        pendingWrites.add(executor.submit(() -> {
+            Path target = Paths.get(path);
+            Path temporary = Paths.get(path + ".tmp");
+            try {
+                if (format == Constants.PatternFormat.BINARY) {
+                    try (BinaryPatternWriter writer = new BinaryPatternWriter(temporary.toString())) {
+                        manager.dumpBinaryPatterns(writer, absoluteStartTime, verify);
+                    }
+                } else {
+                    try (BufferedWriter writer = new BufferedWriter(new FileWriter(temporary.toFile()))) {
+                        manager.dumpPatterns(writer, absoluteStartTime, verify);
+                    }
+                }
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                // Both are left behind if the dump failed
+                try {
+                    Files.deleteIfExists(temporary);
+                } finally {
+                    manager.resetPatterns(); // Deletes any spilled instances
+                }
+            }
+            return null;
+        }));
+    }
+
+    /**
+     * Waits for every queued dump to be written.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        executor.shutdown();
+        checkCompletedWrites(pendingWrites.size());
+    }
+
+    /**
+     * Removes the dumps that have been written, after waiting for the oldest `waitCount` of them to be.
+     */
+    private void checkCompletedWrites(int waitCount) throws IOException {
+        Iterator<Future<Void>> iterator = pendingWrites.iterator();
+        for (int i = 0; iterator.hasNext(); i++) {
+            Future<Void> pendingWrite = iterator.next();
+            if (i >= waitCount && !pendingWrite.isDone()) continue;
+            try {
+                pendingWrite.get();
+            } catch (InterruptedException | ExecutionException e) {
+                executor.shutdownNow();
+                throw new IOException("Failed to write patterns", e);
+            }
+            iterator.remove();
+        }
+    }
+}
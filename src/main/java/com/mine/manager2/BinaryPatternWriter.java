@@ -0,0 +1,129 @@
+package com.mine.manager2;
+
+import com.mine.Constants;
+import com.mine.VarintBuffer;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes dumped patterns in the binary pattern format, which the analyzer reads with its BinaryPatternReader. It
+ * holds the same data as the JSON dump, with pattern ids serialized the same way.
+ *
+ * The file starts with a magic number, a version and the number of patterns, followed by:
+ * 1. the pattern table, with the id, depth and instance count of every pattern,
+ * 2. a record for every pattern, in the order of the table.
+ *
+ * A record starts with the byte length of the representation, then the representation itself as varints: the
+ * number of base functions and each base function with its count, then the number of pattern ids and each pattern
+ * id with its count. Next comes a byte telling whether duration statistics follow, and if so the count, total, min,
+ * max, p50, p90 and p99 as longs. Last are the interval count and blocks of up to BLOCK_SIZE intervals. Each block
+ * is a header of two ints (the interval count and the byte length) followed by the intervals, each as the zigzag
+ * encoded delta of its start time from the previous one and its duration. Start times are relative to the absolute
+ * start time, and deltas restart at 0 on every block, so a reader can skip whole blocks by their length.
+ */
+public class BinaryPatternWriter implements Closeable {
+
+    public static final int MAGIC = 0x4d504154; // "MPAT"
+    public static final int VERSION = 1;
+    public static final int BLOCK_SIZE = 1 << 12;
+
+    private final DataOutputStream out;
+    private final VarintBuffer buffer = new VarintBuffer(BLOCK_SIZE * 4);
+
+    public BinaryPatternWriter(String path) throws IOException {
+        this(new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16)));
+    }
+
+    public BinaryPatternWriter(DataOutputStream out) {
+        this.out = out;
+    }
+
+    public void write(List<Pattern2> patterns, Map<Integer, Integer> singleFunctionPatterns, long absoluteStartTime)
+            throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(patterns.size());
+        for (Pattern2 pattern : patterns) {
+            out.writeInt(Constants.PATTERN_BASE + pattern.getPatternId());
+            out.writeInt(pattern.getDepth());
+            out.writeLong(pattern.getInstanceCount());
+        }
+        for (Pattern2 pattern : patterns) {
+            writeRepresentation(pattern, singleFunctionPatterns);
+            writeDurations(pattern.getDurations());
+            writeIntervals(pattern.getIntervals(), absoluteStartTime);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void writeRepresentation(Pattern2 pattern, Map<Integer, Integer> singleFunctionPatterns)
+            throws IOException {
+        buffer.clear();
+        buffer.writeUnsigned(pattern.getBaseFunctionCounts().size());
+        for (Map.Entry<Integer, Integer> baseFunctionCount : pattern.getBaseFunctionCounts().entrySet()) {
+            buffer.writeSigned(baseFunctionCount.getKey());
+            buffer.writeUnsigned(baseFunctionCount.getValue());
+        }
+        Map<Integer, Integer> patternIdCounts = pattern.getPatternIdCounts();
+        // The null pattern is left out, as in the JSON dump
+        buffer.writeUnsigned(patternIdCounts.size() - (patternIdCounts.containsKey(Constants.NULL_PATTERN_ID) ? 1 : 0));
+        for (Map.Entry<Integer, Integer> patternIdCount : patternIdCounts.entrySet()) {
+            if (patternIdCount.getKey() == Constants.NULL_PATTERN_ID) continue;
+            buffer.writeSigned(Pattern2.serializedPatternId(patternIdCount.getKey(), singleFunctionPatterns));
+            buffer.writeUnsigned(patternIdCount.getValue());
+        }
+        out.writeInt(buffer.size());
+        buffer.writeTo(out);
+    }
+
+    private void writeDurations(DurationHistogram durations) throws IOException {
+        out.writeBoolean(durations != null);
+        if (durations == null) return;
+        out.writeLong(durations.getCount());
+        out.writeLong(durations.getTotal());
+        out.writeLong(durations.getMin());
+        out.writeLong(durations.getMax());
+        out.writeLong(durations.getPercentile(0.5));
+        out.writeLong(durations.getPercentile(0.9));
+        out.writeLong(durations.getPercentile(0.99));
+    }
+
+    private void writeIntervals(IntervalList intervals, long absoluteStartTime) throws IOException {
+        out.writeInt(intervals.size());
+        buffer.clear();
+        int blockIntervals = 0;
+        long previousStartTime = 0;
+        try (IntervalList.Cursor interval = intervals.cursor()) {
+            while (interval.next()) {
+                long relativeStartTime = interval.getStartTime() - absoluteStartTime;
+                buffer.writeSigned(relativeStartTime - previousStartTime);
+                buffer.writeUnsigned(interval.getDuration());
+                previousStartTime = relativeStartTime;
+                blockIntervals++;
+                if (blockIntervals == BLOCK_SIZE) {
+                    flushBlock(blockIntervals);
+                    blockIntervals = 0;
+                    previousStartTime = 0;
+                }
+            }
+        }
+        if (blockIntervals > 0) flushBlock(blockIntervals);
+    }
+
+    private void flushBlock(int blockIntervals) throws IOException {
+        out.writeInt(blockIntervals);
+        out.writeInt(buffer.size());
+        buffer.writeTo(out);
+        buffer.clear();
+    }
+}
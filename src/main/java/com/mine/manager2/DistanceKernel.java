@@ -0,0 +1,123 @@
+package com.mine.manager2;
+
+import java.util.Arrays;
+
+/**
+ * Computes the distance from one subtrace, the query, to patterns in the PatternStore. The distance is the same as
+ * SubtraceRepresentation.getDistance computes.
+ *
+ * Each pattern is a single pass over its ids in the store, which finds the nearest query id for each of them and the
+ * nearest of them for each query id at once, instead of a separate pass for each direction of the Hausdorff
+ * distance. When computing the distances to all patterns, the distances from each query id to every pattern are
+ * first gathered into a row per query id, so that the passes read plain arrays instead of the distance map.
+ *
+ * A kernel holds the state of one query at a time, so each thread needs its own.
+ */
+public class DistanceKernel {
+
+    private final PatternStore store;
+    private final DistanceMap distanceMap;
+
+    private int[] queryIds = new int[8];
+    private int queryIdCount = 0;
+    private int queryBaseFunction;
+    private double[] queryIdDistances = new double[8];
+    private double[][] rows = new double[8][0]; // rows[i][p] is the distance from queryIds[i] to pattern p, once gathered
+
+    public DistanceKernel(PatternStore store, DistanceMap distanceMap) {
+        this.store = store;
+        this.distanceMap = distanceMap;
+    }
+
+    /**
+     * Makes `representation` the query that distances are computed from.
+     */
+    public void setQuery(SubtraceRepresentation representation) {
+        PatternIdMultiset patternIds = representation.getPatternIds();
+        queryIdCount = patternIds.size();
+        if (queryIdCount > queryIds.length) {
+            int capacity = Math.max(queryIdCount, queryIds.length * 2);
+            queryIds = new int[capacity];
+            queryIdDistances = new double[capacity];
+            int gatheredRows = rows.length;
+            rows = Arrays.copyOf(rows, capacity);
+            Arrays.fill(rows, gatheredRows, capacity, new double[0]);
+        }
+        for (int i = 0; i < queryIdCount; i++) {
+            queryIds[i] = patternIds.getId(i);
+        }
+        queryBaseFunction = representation.getBaseFunction();
+    }
+
+    /**
+     * The distances from the query to patterns 0 to `count - 1`.
+     */
+    public double[] getDistances(int count) {
+        for (int i = 0; i < queryIdCount; i++) {
+            if (rows[i].length < count) rows[i] = new double[Math.max(count, rows[i].length * 2)];
+            double[] row = rows[i];
+            int queryId = queryIds[i];
+            for (int patternId = 0; patternId < count; patternId++) {
+                row[patternId] = distanceMap.getDistance(queryId, patternId);
+            }
+        }
+
+        double[] distances = new double[count];
+        for (int patternId = 0; patternId < count; patternId++) {
+            distances[patternId] = getDistanceWithin(patternId, Double.POSITIVE_INFINITY, true);
+        }
+        return distances;
+    }
+
+    /**
+     * Computes the distance from the query to the given pattern, but gives up as soon as the distance is known to be
+     * at least `threshold`. Returns the exact distance if it's below `threshold`, and otherwise some value that is
+     * at least `threshold`.
+     *
+     * The function distance is checked first, so patterns with another base function are often rejected without
+     * looking at any distances. After that, the running maximum of the Hausdorff distance only grows, so once it
+     * plus the function distance reaches `threshold` the rest can be skipped.
+     */
+    public double getDistanceWithin(int patternId, double threshold) {
+        return getDistanceWithin(patternId, threshold, false);
+    }
+
+    private double getDistanceWithin(int patternId, double threshold, boolean gathered) {
+        // Past the maximum distance, the distance is known to be the maximum
+        double maxDistance = distanceMap.getMaxDistance();
+        double exitDistance = Math.min(threshold, maxDistance);
+        double functionDistance = SubtraceRepresentation.getFunctionDistance(
+                queryBaseFunction, store.getBaseFunction(patternId));
+        if (functionDistance >= exitDistance) return Math.min(functionDistance, maxDistance);
+
+        for (int i = 0; i < queryIdCount; i++) {
+            queryIdDistances[i] = Integer.MAX_VALUE;
+        }
+
+        double patternSetDistance = 0;
+        int[] patternIds = store.getPatternIds();
+        int end = store.getEnd(patternId);
+        for (int j = store.getStart(patternId); j < end; j++) {
+            int otherPatternId = patternIds[j];
+            double distanceToQuery = Integer.MAX_VALUE;
+            for (int i = 0; i < queryIdCount; i++) {
+                double curDistance = gathered
+                        ? rows[i][otherPatternId]
+                        : distanceMap.getDistance(queryIds[i], otherPatternId);
+                if (curDistance < distanceToQuery) distanceToQuery = curDistance;
+                if (curDistance < queryIdDistances[i]) queryIdDistances[i] = curDistance;
+            }
+            if (distanceToQuery > patternSetDistance) {
+                patternSetDistance = distanceToQuery;
+                if (patternSetDistance + functionDistance >= exitDistance) {
+                    return Math.min(patternSetDistance + functionDistance, maxDistance);
+                }
+            }
+        }
+        for (int i = 0; i < queryIdCount; i++) {
+            if (queryIdDistances[i] > patternSetDistance) patternSetDistance = queryIdDistances[i];
+        }
+
+        return Math.min(patternSetDistance + functionDistance, maxDistance);
+    }
+}
@@ -1,34 +1,42 @@
 package com.mine.manager2;
 
-import java.util.List;
+import java.io.Closeable;
+import java.io.IOException;
 
 /**
  * Maps pairs of pattern IDs to a distance value. This is a metric.
+ *
+ * Patterns are added in increasing order of id, each with a DistanceKernel that computes its distances to all of the
+ * patterns before it. A map may compute those distances right away or only once they're looked up. Adding a pattern
+ * must not race with reading distances, which the PatternRegistry ensures with its lock.
  */
-public class DistanceMap {
-    private List<List<Double>> distanceMap;
+public interface DistanceMap extends Closeable {
 
-    public DistanceMap(List<List<Double>> distanceMap) {
-        this.distanceMap = distanceMap;
-    }
-    
-    public double getDistance(int p1, int p2) {
-        return distanceMap.get(p1).get(p2);
-    }
+    double getDistance(int p1, int p2);
+
+    /**
+     * The number of patterns in the map.
+     */
+    int size();
+
+    /**
+     * Adds `representation` as the pattern with id `size()`. `kernel` has `representation` as its query, over a store
+     * of patterns 0 to `size() - 1`.
+     */
+    void addPattern(SubtraceRepresentation representation, DistanceKernel kernel);
 
-    List<List<Double>> get() {
-        return distanceMap;
+    /**
+     * Distances of at least this much are all reported as this distance. Capping a metric this way keeps it a
+     * metric, and representations cap their distances to each other the same way.
+     */
+    default double getMaxDistance() {
+        return Double.POSITIVE_INFINITY;
     }
 
-    public String toString() {
-        StringBuilder sb = new StringBuilder();
-        for (List<Double> distances : distanceMap) {
-            for (Double distance : distances) {
-                sb.append(distance);
-                sb.append("\t");
-            }
-            sb.append("\n");
-        }
-        return sb.toString();
+    /**
+     * Releases any resources held outside the heap.
+     */
+    @Override
+    default void close() throws IOException {
     }
 }
@@ -0,0 +1,106 @@
+package com.mine.manager2;
+
+import java.util.Arrays;
+
+/**
+ * Count, total, minimum and maximum of the durations of the instances of a pattern, along with a log-bucketed
+ * histogram of them from which percentiles are estimated.
+ *
+ * Durations below SUB_BUCKETS * 2 get a bucket each. Every power of two above that is split into SUB_BUCKETS buckets
+ * of equal width, so a percentile is off by less than 1 / SUB_BUCKETS of its value. There are at most 488 buckets,
+ * but the counts only grow to the highest bucket used, so patterns with short instances take little memory.
+ */
+public class DurationHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int EXACT_BUCKETS = 2 * SUB_BUCKETS;
+
+    private long[] bucketCounts = new long[0];
+    private long count = 0;
+    private long total = 0;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    public void add(long duration) {
+        int bucket = bucket(duration);
+        if (bucket >= bucketCounts.length) {
+            bucketCounts = Arrays.copyOf(bucketCounts, bucket + 1);
+        }
+        bucketCounts[bucket]++;
+        count++;
+        total += duration;
+        min = Math.min(min, duration);
+        max = Math.max(max, duration);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public long getMin() {
+        return min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Estimates the duration that a `quantile` of the instances take at most, from the middle of the bucket it
+     * falls in. Durations that get a bucket each, and the minimum and maximum, are exact.
+     */
+    public long getPercentile(double quantile) {
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < bucketCounts.length; bucket++) {
+            seen += bucketCounts[bucket];
+            if (seen >= rank) {
+                long middle = lowerBound(bucket) + (lowerBound(bucket + 1) - lowerBound(bucket) - 1) / 2;
+                return Math.min(Math.max(middle, min), max);
+            }
+        }
+        return max;
+    }
+
+    public void clear() {
+        bucketCounts = new long[0];
+        count = 0;
+        total = 0;
+        min = Long.MAX_VALUE;
+        max = Long.MIN_VALUE;
+    }
+
+    public DurationHistogram copy() {
+        DurationHistogram copy = new DurationHistogram();
+        copy.bucketCounts = bucketCounts.clone();
+        copy.count = count;
+        copy.total = total;
+        copy.min = min;
+        copy.max = max;
+        return copy;
+    }
+
+    private static int bucket(long duration) {
+        if (duration < EXACT_BUCKETS) return (int) Math.max(duration, 0);
+        int exponent = 63 - Long.numberOfLeadingZeros(duration);
+        int subBucket = (int) (duration >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return EXACT_BUCKETS + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * The least duration in `bucket`.
+     */
+    private static long lowerBound(int bucket) {
+        if (bucket < EXACT_BUCKETS) return bucket;
+        int exponent = (bucket - EXACT_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+        if (exponent > 62) return Long.MAX_VALUE;
+        long subBucket = (bucket - EXACT_BUCKETS) % SUB_BUCKETS;
+        return (1L << exponent) + (subBucket << (exponent - SUB_BUCKET_BITS));
+    }
+}
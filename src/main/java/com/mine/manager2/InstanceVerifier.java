@@ -0,0 +1,128 @@
+package com.mine.manager2;
+
+import com.mine.Constants;
+
+import java.util.Arrays;
+
+/**
+ * Checks the pattern instances of one thread as they are recorded, rather than in passes over all of them when they
+ * are dumped. It verifies that:
+ * 1. Patterns have constituent patterns with strictly lower depth.
+ * 2. The instances of the patterns of a given depth occur on disjoint time intervals.
+ * 3. All pattern occurrences are accounted for wherever they occur (except the null pattern).
+ *
+ * Instances are recorded when their subtrace is exited, so in order of end time. Intervals that are disjoint are
+ * then also in order of start time, so each one only needs to be checked against the end of the last instance
+ * recorded at the same depth. An instance is only accounted for once the subtrace it occurs in is exited, so
+ * occurrence counts can only be checked when the thread has been mined to the end.
+ *
+ * At the SAMPLED level, only one in VERIFICATION_SAMPLE_RATE instances is checked for 1 and 2, and 3 isn't checked.
+ * Failures are printed, and counted so that they can be checked for.
+ */
+public class InstanceVerifier {
+
+    private final Constants.VerificationLevel level;
+    private final PatternRegistry registry;
+    private long[] lastEndTimeByDepth = new long[0];
+    private int[] unaccountedOccurrences = new int[0]; // Indexed by pattern id
+    private long instanceCount = 0;
+    private long failureCount = 0;
+
+    public InstanceVerifier(Constants.VerificationLevel level, PatternRegistry registry) {
+        this.level = level;
+        this.registry = registry;
+    }
+
+    /**
+     * Checks an instance of the pattern with the given id and depth, recorded from `container`.
+     */
+    public void addInstance(int patternId, int patternDepth, RepresentationContainer container) {
+        if (level == Constants.VerificationLevel.OFF) return;
+        boolean sampled = level == Constants.VerificationLevel.FULL
+                || instanceCount % Constants.VERIFICATION_SAMPLE_RATE == 0;
+        instanceCount++;
+
+        if (patternDepth >= lastEndTimeByDepth.length) {
+            int oldLength = lastEndTimeByDepth.length;
+            lastEndTimeByDepth = Arrays.copyOf(lastEndTimeByDepth, patternDepth + 1);
+            Arrays.fill(lastEndTimeByDepth, oldLength, lastEndTimeByDepth.length, Long.MIN_VALUE);
+        }
+        PatternIdMultiset patternIds = container.getRepresentation().getPatternIds();
+        if (sampled) {
+            for (int i = 0; i < patternIds.size(); i++) {
+                if (!(registry.getRepresentation(patternIds.getId(i)).getDepth() < patternDepth)) {
+                    fail("Faiure: depth of constituent pattern is not strictly less that current pattern.");
+                }
+            }
+            if (container.getStartTime() < lastEndTimeByDepth[patternDepth]) {
+                fail("Failure: intervals of two patterns of the same depth or overlapping.");
+            }
+        }
+        lastEndTimeByDepth[patternDepth] = container.getEndTime();
+
+        if (level != Constants.VerificationLevel.FULL) return;
+        addOccurrences(patternId, 1);
+        for (int i = 0; i < patternIds.size(); i++) {
+            addOccurrences(patternIds.getId(i), -patternIds.getCount(i));
+        }
+    }
+
+    /**
+     * Accounts for an instance that doesn't occur on top of another pattern.
+     */
+    public void addPatternOnBase(int patternId) {
+        if (level != Constants.VerificationLevel.FULL) return;
+        addOccurrences(patternId, -1);
+    }
+
+    /**
+     * Reports the occurrences that haven't been accounted for. Instances of subtraces that are still open aren't
+     * accounted for yet, so this should only be done once the thread has been mined to the end.
+     */
+    public void verifyOccurrenceCounts() {
+        if (level != Constants.VerificationLevel.FULL) return;
+        // Ignore the null pattern
+        for (int patternId = Constants.NULL_PATTERN_ID + 1; patternId < unaccountedOccurrences.length; patternId++) {
+            int count = unaccountedOccurrences[patternId];
+            if (count != 0) {
+                fail("Failure: " + count + " occurences of pattern " + patternId + " are not accounted for.");
+            }
+        }
+    }
+
+    /**
+     * The number of failures reported since this verifier was last cleared.
+     */
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    public void clear() {
+        lastEndTimeByDepth = new long[0];
+        unaccountedOccurrences = new int[0];
+        instanceCount = 0;
+        failureCount = 0;
+    }
+
+    public InstanceVerifier copy() {
+        InstanceVerifier copy = new InstanceVerifier(level, registry);
+        copy.lastEndTimeByDepth = lastEndTimeByDepth.clone();
+        copy.unaccountedOccurrences = unaccountedOccurrences.clone();
+        copy.instanceCount = instanceCount;
+        copy.failureCount = failureCount;
+        return copy;
+    }
+
+    private void fail(String message) {
+        System.out.println(message);
+        failureCount++;
+    }
+
+    private void addOccurrences(int patternId, int count) {
+        if (patternId >= unaccountedOccurrences.length) {
+            unaccountedOccurrences = Arrays.copyOf(
+                    unaccountedOccurrences, Math.max(patternId + 1, unaccountedOccurrences.length * 2));
+        }
+        unaccountedOccurrences[patternId] += count;
+    }
+}
@@ -0,0 +1,215 @@
+package com.mine.manager2;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The time intervals of the instances of a pattern, in the order they were added. Each interval is stored as two
+ * zigzag LEB128 varints: the difference between its start time and that of the previous interval, and its duration.
+ * Instances of a pattern are added in order of time and are mostly short, so an interval typically takes a few bytes
+ * instead of two boxed Longs.
+ *
+ * Intervals are read back in order with a Cursor.
+ *
+ * The encoded intervals can be spilled to a temporary file to free the heap they take. Spilled bytes are followed by
+ * the ones added since, with deltas running on across them, so a cursor reads the file and then the heap. Copies
+ * share the spill file, which is deleted once neither the list nor any copy of it uses it anymore.
+ */
+public class IntervalList {
+
+    private byte[] bytes;
+    private int byteCount = 0;
+    private int size = 0;
+    private long lastStartTime = 0;
+    private SpillFile spillFile;
+    private long spilledByteCount = 0;
+    private boolean ownsSpillFile = false; // Only the list that created the spill file appends to it
+
+    public IntervalList() {
+        this(16);
+    }
+
+    private IntervalList(int initialCapacity) {
+        bytes = new byte[Math.max(initialCapacity, 16)];
+    }
+
+    public void add(long startTime, long duration) {
+        if (byteCount + 20 > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(byteCount + 20, bytes.length * 2));
+        }
+        writeSigned(startTime - lastStartTime);
+        writeSigned(duration);
+        lastStartTime = startTime;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes every interval, deleting the spill file unless a copy still uses it.
+     */
+    public void clear() {
+        if (spillFile != null) spillFile.release();
+        spillFile = null;
+        spilledByteCount = 0;
+        ownsSpillFile = false;
+        byteCount = 0;
+        size = 0;
+        lastStartTime = 0;
+    }
+
+    /**
+     * Copies the intervals added so far. Spilled intervals aren't copied but shared, since the spill file is only
+     * ever appended to. The copy must be cleared once it's no longer needed, to let go of the spill file.
+     */
+    public IntervalList copy() {
+        IntervalList copy = new IntervalList(byteCount);
+        System.arraycopy(bytes, 0, copy.bytes, 0, byteCount);
+        copy.byteCount = byteCount;
+        copy.size = size;
+        copy.lastStartTime = lastStartTime;
+        copy.spillFile = spillFile != null ? spillFile.retain() : null;
+        copy.spilledByteCount = spilledByteCount;
+        return copy;
+    }
+
+    /**
+     * The bytes of heap taken by the intervals that haven't been spilled.
+     */
+    public int getHeapBytes() {
+        return bytes.length;
+    }
+
+    /**
+     * Appends the intervals held on the heap to the spill file of this list, which is created in `directory` the
+     * first time, and frees the heap they took.
+     */
+    public void spill(Path directory) throws IOException {
+        if (byteCount == 0) return;
+        if (spillFile == null || !ownsSpillFile) {
+            SpillFile newSpillFile = SpillFile.create(directory);
+            // A copy shares the spill file of the list it was copied from, so it starts its own with those bytes
+            if (spillFile != null) {
+                copySpilledBytes(spillFile.getPath(), spilledByteCount, newSpillFile.getPath());
+                spillFile.release();
+            }
+            spillFile = newSpillFile;
+            ownsSpillFile = true;
+        }
+        try (OutputStream out = Files.newOutputStream(spillFile.getPath(), StandardOpenOption.APPEND)) {
+            out.write(bytes, 0, byteCount);
+        }
+        spilledByteCount += byteCount;
+        byteCount = 0;
+        bytes = new byte[16];
+    }
+
+    private static void copySpilledBytes(Path source, long byteCount, Path target) throws IOException {
+        try (InputStream in = Files.newInputStream(source);
+             OutputStream out = Files.newOutputStream(target, StandardOpenOption.APPEND)) {
+            byte[] buffer = new byte[8192];
+            while (byteCount > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, byteCount));
+                if (read < 0) throw new IOException("Spill file " + source + " is truncated");
+                out.write(buffer, 0, read);
+                byteCount -= read;
+            }
+        }
+    }
+
+    /**
+     * A cursor before the first interval, which must be closed if the list has been spilled.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    private void writeSigned(long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            bytes[byteCount++] = (byte) ((zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+        }
+        bytes[byteCount++] = (byte) zigzag;
+    }
+
+    /**
+     * Iterates over the intervals in the order they were added. Intervals added after the cursor was created may
+     * or may not be seen, and the list mustn't be spilled while a cursor is in use.
+     *
+     * Spilled intervals are streamed from their file, which is kept open until they've all been read or the cursor
+     * is closed.
+     */
+    public class Cursor implements Closeable {
+        private InputStream spilled;
+        private long spilledRemaining = spilledByteCount;
+        private int position = 0;
+        private long startTime = 0;
+        private long duration;
+
+        /**
+         * Advances to the next interval. Returns false once there are none left.
+         */
+        public boolean next() {
+            if (spilledRemaining == 0 && position >= byteCount) return false;
+            startTime += readSigned();
+            duration = readSigned();
+            return true;
+        }
+
+        public long getStartTime() {
+            return startTime;
+        }
+
+        public long getDuration() {
+            return duration;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (spilled != null) spilled.close();
+        }
+
+        private long readSigned() {
+            long zigzag = 0;
+            int shift = 0;
+            while (true) {
+                byte b = readByte();
+                zigzag |= (long) (b & 0x7F) << shift;
+                if (b >= 0) break;
+                shift += 7;
+            }
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        private byte readByte() {
+            if (spilledRemaining == 0) return bytes[position++];
+            try {
+                if (spilled == null) {
+                    spilled = new BufferedInputStream(new FileInputStream(spillFile.getPath().toFile()), 1 << 16);
+                }
+                int b = spilled.read();
+                if (b < 0) throw new IOException("Spill file " + spillFile.getPath() + " is truncated");
+                if (--spilledRemaining == 0) spilled.close();
+                return (byte) b;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read spilled intervals", e);
+            }
+        }
+    }
+}
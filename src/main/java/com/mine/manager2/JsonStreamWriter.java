@@ -0,0 +1,123 @@
+package com.mine.manager2;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Writes JSON straight to a Writer as it's produced, without building a tree of JSONObjects and JSONArrays first, so
+ * that dumping patterns doesn't take several times the heap of the patterns themselves. Commas and colons are put in
+ * as needed; the caller is only responsible for balancing the begin and end calls, and for naming every value
+ * inside an object.
+ */
+public class JsonStreamWriter {
+
+    private final Writer writer;
+    private boolean[] containerHasValues = new boolean[8]; // Whether the open container at each depth has a value
+    private int depth = 0;
+    private boolean afterName = false;
+
+    public JsonStreamWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    public JsonStreamWriter beginArray() throws IOException {
+        return beginContainer('[');
+    }
+
+    public JsonStreamWriter endArray() throws IOException {
+        return endContainer(']');
+    }
+
+    public JsonStreamWriter beginObject() throws IOException {
+        return beginContainer('{');
+    }
+
+    public JsonStreamWriter endObject() throws IOException {
+        return endContainer('}');
+    }
+
+    public JsonStreamWriter name(String name) throws IOException {
+        beforeValue();
+        writeString(name);
+        writer.write(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonStreamWriter value(long value) throws IOException {
+        beforeValue();
+        writer.write(Long.toString(value));
+        return this;
+    }
+
+    public JsonStreamWriter value(String value) throws IOException {
+        beforeValue();
+        writeString(value);
+        return this;
+    }
+
+    /**
+     * Flushes the underlying writer, which is left open.
+     */
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    private JsonStreamWriter beginContainer(char begin) throws IOException {
+        beforeValue();
+        writer.write(begin);
+        depth++;
+        if (depth == containerHasValues.length) {
+            containerHasValues = Arrays.copyOf(containerHasValues, depth * 2);
+        }
+        containerHasValues[depth] = false;
+        return this;
+    }
+
+    private JsonStreamWriter endContainer(char end) throws IOException {
+        writer.write(end);
+        depth--;
+        return this;
+    }
+
+    private void beforeValue() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (containerHasValues[depth]) writer.write(',');
+        containerHasValues[depth] = true;
+    }
+
+    private void writeString(String string) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            switch (c) {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    if (c < ' ') {
+                        writer.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        writer.write(c);
+                    }
+            }
+        }
+        writer.write('"');
+    }
+}
@@ -0,0 +1,97 @@
+package com.mine.manager2;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * DistanceMap that computes the distance between two patterns from their representations only when it's looked up,
+ * instead of computing a full row whenever a pattern is added. Matching reads few of those distances, so adding a
+ * pattern no longer costs a distance computation per existing pattern.
+ *
+ * Computed distances are cached in rows of the lower triangle, like in TriangularDistanceMap, where NaN marks a
+ * distance that hasn't been computed. A row is only allocated once one of its distances is looked up, and once the
+ * rows hold more than `cacheSize` distances, the rows allocated first are evicted. An evicted distance is simply
+ * computed again from the same representations, so lookups always return exactly what an eager map would. Computing
+ * one distance looks up distances between lower patterns, so a cache too small for the rows in use makes those
+ * recomputations cascade.
+ *
+ * Lookups of allocated rows don't take any locks, even though every mining thread looks up distances at once. Rows
+ * are published through an AtomicReferenceArray, so a thread that sees a row also sees it filled with NaN. After
+ * that, every write to the row is the exact distance, so a thread reads either NaN or that distance. Two threads may
+ * both compute a distance, or a thread may miss a distance another one cached, but never read a wrong one.
+ *
+ * Patterns are only added while no distances are looked up, which PatternRegistry ensures with its write lock.
+ */
+public class LazyDistanceMap implements DistanceMap {
+
+    private final List<SubtraceRepresentation> representations = new ArrayList<>();
+    private final long cacheSize;
+    private volatile AtomicReferenceArray<float[]> rows = new AtomicReferenceArray<>(16);
+    private final Queue<Integer> allocatedRows = new ArrayDeque<>();
+    private long cachedDistances = 0;
+
+    /**
+     * `cacheSize` is the number of distances that may be cached, though at least one row is always kept.
+     */
+    public LazyDistanceMap(long cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    @Override
+    public double getDistance(int p1, int p2) {
+        if (p1 == p2) return 0.0;
+        if (p1 < p2) {
+            int swap = p1;
+            p1 = p2;
+            p2 = swap;
+        }
+
+        float[] row = rows.get(p1);
+        if (row == null) row = allocateRow(p1);
+        float distance = row[p2];
+        if (distance != distance) { // Not computed yet
+            // Looks up the distances between the patterns the two are made of, which have lower ids, in turn
+            distance = (float) representations.get(p1).getDistance(representations.get(p2));
+            row[p2] = distance;
+        }
+        return distance;
+    }
+
+    @Override
+    public int size() {
+        return representations.size();
+    }
+
+    @Override
+    public synchronized void addPattern(SubtraceRepresentation representation, DistanceKernel kernel) {
+        if (representations.size() == rows.length()) {
+            AtomicReferenceArray<float[]> grownRows = new AtomicReferenceArray<>(rows.length() * 2);
+            for (int i = 0; i < rows.length(); i++) {
+                grownRows.set(i, rows.get(i));
+            }
+            rows = grownRows;
+        }
+        representations.add(representation);
+    }
+
+    private synchronized float[] allocateRow(int patternId) {
+        float[] row = rows.get(patternId);
+        if (row != null) return row; // Allocated by another thread
+
+        while (cachedDistances + patternId > cacheSize && !allocatedRows.isEmpty()) {
+            int evictedPatternId = allocatedRows.remove();
+            rows.set(evictedPatternId, null);
+            cachedDistances -= evictedPatternId;
+        }
+        row = new float[patternId];
+        Arrays.fill(row, Float.NaN);
+        rows.set(patternId, row); // Publishes the filled row
+        allocatedRows.add(patternId);
+        cachedDistances += patternId;
+        return row;
+    }
+}
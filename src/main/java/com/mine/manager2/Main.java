@@ -1,22 +1,39 @@
 package com.mine.manager2;
 
+import com.mine.BinaryTraceReader;
+import com.mine.BinaryTraceWriter;
 import com.mine.Constants;
+import com.mine.MappedTraceReader;
+import com.mine.PipelinedTraceReader;
+import com.mine.StreamTraceReader;
+import com.mine.TraceReader;
 import com.mine.manager2.analyzer.Analyzer;
+import com.mine.manager2.analyzer.BinaryPatternReader;
+import com.mine.manager2.analyzer.ParsedPattern;
 import org.json.JSONArray;
-import org.json.JSONObject;
 import org.json.JSONTokener;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class Main {
 
     public static void main(String[] args) throws IOException {
-        Constants.RunMode mode = Constants.RunMode.MINE;
+        Constants.RunMode mode = args.length > 0 ? Constants.RunMode.valueOf(args[0].toUpperCase()) : Constants.RunMode.MINE;
         switch (mode) {
             case ANALYZE:
                 // Run the analyzer
@@ -29,13 +46,15 @@ public class Main {
                 break;
             case SPACE_FIX:
                 // Fix pattern indentation for readability in case we accidently indent with 0
-                BufferedReader reader = new BufferedReader(
-                        new FileReader(Constants.PATTERN_DIR + "thread.1.patterns"));
-                JSONTokener tokener = new JSONTokener(reader);
-                JSONArray patterns = new JSONArray(tokener);
-                BufferedWriter writer = new BufferedWriter(
-                        new FileWriter(Constants.PATTERN_DIR + "thread.1.patterns"));
-                writer.write(patterns.toString(2));
+                spaceFix();
+                break;
+            case STREAM:
+                // Mine patterns from a trace that is still being written, read from a named pipe or stdin
+                streamPatterns(args.length > 1 ? args[1] : null);
+                break;
+            case CONVERT:
+                // Convert text traces to the binary trace format, which is read in place of them from then on
+                convertTraces();
                 break;
             default:
                 throw new IllegalArgumentException("No such RunMode supported");
@@ -43,55 +62,189 @@ public class Main {
     }
 
     private static void minePatterns()  throws IOException {
-        PatternManager2 manager = new PatternManager2(new DistanceMap(new ArrayList<>()));
+        PatternRegistry registry = new PatternRegistry(newDistanceMap());
         Long absoluteStartTime = Long.MAX_VALUE;
         Long absoluteEndTime = Long.MIN_VALUE;
 
-        // Find absolute start and end across all threads
+        // Only the first event of each trace is needed to find the absolute start, which every dump is relative to.
         for (int i = Constants.START_THREAD; i <= Constants.END_THREAD; i++) {
-            BufferedReader reader = new BufferedReader(
-                    new FileReader(Constants.THREAD_DIR + "thread." + i + ".trace"));
-            String line = reader.readLine();
-            Long threadStartTime = Long.parseLong(line.split("\t")[2]);
-            absoluteStartTime = Math.min(absoluteStartTime, threadStartTime);
-
-            // Get to last line
-            String lastLine = line;
-            while (line != null) {
-                lastLine = line;
-                line = reader.readLine();
+            TraceReader reader = openTrace(i);
+            if (reader.next()) {
+                absoluteStartTime = Math.min(absoluteStartTime, reader.getTime());
+            }
+            reader.close();
+        }
+
+        // Each trace is mined by its own PatternMiner2 and PatternManager2, with all of them sharing the registry. With a
+        // single mining thread, the traces are mined in order as if by one manager.
+        // The patterns of each trace are written in the background once it has been mined, so mining the next
+        // trace doesn't wait on them. Only one mined trace per mining thread is kept waiting to be written.
+        final long dumpStartTime = absoluteStartTime;
+        AsyncPatternWriter patternWriter = new AsyncPatternWriter(Constants.MINING_THREADS);
+        ExecutorService miningPool = Executors.newFixedThreadPool(Constants.MINING_THREADS);
+        List<Future<Long>> threadEndTimes = new ArrayList<>();
+        for (int i = Constants.START_THREAD; i <= Constants.END_THREAD; i++) {
+            final int thread = i;
+            threadEndTimes.add(miningPool.submit(() -> mineThread(registry, thread, dumpStartTime, patternWriter)));
+        }
+        miningPool.shutdown();
+        try {
+            for (Future<Long> threadEndTime : threadEndTimes) {
+                try {
+                    absoluteEndTime = Math.max(absoluteEndTime, threadEndTime.get());
+                } catch (InterruptedException | ExecutionException e) {
+                    miningPool.shutdownNow();
+                    throw new IOException("Failed to mine thread", e);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Failing to write the patterns mined so far shouldn't hide why mining failed
+            try {
+                patternWriter.close();
+            } catch (IOException | RuntimeException closeFailure) {
+                e.addSuppressed(closeFailure);
             }
-            Long threadEndTime = Long.parseLong(lastLine.split("\t")[2]);
-            absoluteEndTime = Math.max(absoluteEndTime, threadEndTime);
+            try {
+                registry.getDistanceMap().close(); // Deletes a mapped distance map
+            } catch (IOException | RuntimeException closeFailure) {
+                e.addSuppressed(closeFailure);
+            }
+            throw e;
+        }
+        patternWriter.close();
+
+        System.out.println("Fingerprint cache: " + registry.getFingerprintHits() + " hits, "
+                + registry.getFingerprintMisses() + " misses");
+
+        // Write metadata. The absolute end is only known once every thread has been mined.
+        writeMetadata(Constants.PATTERN_DIR, absoluteStartTime, absoluteEndTime);
+        registry.getDistanceMap().close();
+    }
+
+    /**
+     * Indents the JSON patterns of the first thread. Binary patterns are converted to indented JSON, for anything that
+     * still reads `thread.1.patterns`.
+     */
+    private static void spaceFix() throws IOException {
+        String jsonPatternPath = Constants.PATTERN_DIR + "thread.1" + Constants.PATTERN_EXTENSION;
+        String binaryPatternPath = Constants.PATTERN_DIR + "thread.1" + Constants.BINARY_PATTERN_EXTENSION;
+        JSONArray patterns = new JSONArray();
+        if (!new File(jsonPatternPath).exists() && new File(binaryPatternPath).exists()) {
+            try (BinaryPatternReader reader = new BinaryPatternReader(binaryPatternPath, true)) {
+                ParsedPattern pattern;
+                while ((pattern = reader.next()) != null) {
+                    patterns.put(pattern.toJson());
+                }
+            }
+        } else {
+            BufferedReader reader = new BufferedReader(new FileReader(jsonPatternPath));
+            JSONTokener tokener = new JSONTokener(reader);
+            patterns = new JSONArray(tokener);
+            reader.close();
         }
+        BufferedWriter writer = new BufferedWriter(new FileWriter(jsonPatternPath));
+        writer.write(patterns.toString(2));
+        writer.close();
+    }
+
+    /**
+     * Mines events as they arrive on `source`, or on stdin if it's null, writing snapshots of the patterns mined so
+     * far every SNAPSHOT_EVENTS events or SNAPSHOT_SECONDS seconds, whichever comes first.
+     */
+    private static void streamPatterns(String source) throws IOException {
+        TraceReader reader = new StreamTraceReader(source != null ? new FileInputStream(source) : System.in);
+        PatternManager2 manager = new PatternManager2(newDistanceMap());
+        try {
+            new StreamMiner(reader, manager, Constants.PATTERN_DIR, Constants.SNAPSHOT_EVENTS,
+                    TimeUnit.SECONDS.toNanos(Constants.SNAPSHOT_SECONDS)).run();
+        } finally {
+            manager.getDistanceMap().close();
+        }
+    }
+
+    /**
+     * A distance map for a new run. A memory-mapped one is kept in a temporary file in the spill directory until the
+     * run ends.
+     */
+    private static DistanceMap newDistanceMap() throws IOException {
+        if (Constants.LAZY_DISTANCE_MAP) {
+            return new LazyDistanceMap(Constants.DISTANCE_CACHE_SIZE);
+        }
+        if (Constants.SPARSE_DISTANCE_MAP) {
+            return new SparseDistanceMap(Constants.SPARSE_DISTANCE_CAP);
+        }
+        if (Constants.MAPPED_DISTANCE_MAP) {
+            return MappedDistanceMap.create(Paths.get(Constants.SPILL_DIR));
+        }
+        return new TriangularDistanceMap(Constants.SINGLE_PRECISION_DISTANCES);
+    }
 
-        // Write metadata
-        BufferedWriter metadataWriter = new BufferedWriter(
-                new FileWriter(Constants.PATTERN_DIR + "metadata"));
+    static void writeMetadata(String patternDirectory, long absoluteStartTime, long absoluteEndTime)
+            throws IOException {
+        BufferedWriter metadataWriter = new BufferedWriter(new FileWriter(patternDirectory + "metadata"));
 
-        metadataWriter.write(new JSONObject()
-                .put("absoluteStartTime", absoluteStartTime.toString())
-                .put("absoluteEndTime", absoluteEndTime.toString())
-                .put("duration", absoluteEndTime - absoluteStartTime)
-                .toString());
+        new JsonStreamWriter(metadataWriter).beginObject()
+                .name("absoluteStartTime").value(Long.toString(absoluteStartTime))
+                .name("duration").value(absoluteEndTime - absoluteStartTime)
+                .name("absoluteEndTime").value(Long.toString(absoluteEndTime))
+                .endObject();
 
         metadataWriter.close();
+    }
+
+    /**
+     * Mines the trace of the given thread and queues its patterns on `patternWriter`. Returns the time of the last
+     * event mined.
+     */
+    private static long mineThread(
+            PatternRegistry registry,
+            int thread,
+            long absoluteStartTime,
+            AsyncPatternWriter patternWriter) throws IOException {
+        // Read and process data. The trace is decoded on a separate thread from the one mining it.
+        PipelinedTraceReader reader = new PipelinedTraceReader(openTrace(thread));
+        System.out.println("Starting to mine thread: " + thread);
+        PatternManager2 manager = new PatternManager2(registry);
+        PatternMiner2 miner = new PatternMiner2(manager);
+        miner.mineThread(reader);
+        reader.close();
+        System.out.println("Finished mining thread " + thread + ": " + reader.utilizationString());
+
+        // Write data in the background, while the next thread is mined. The pattern file in the other format is
+        // removed, so the analyzer can't read a stale one.
+        String patternPath = Constants.PATTERN_DIR + "thread." + thread;
+        String binaryPatternPath = patternPath + Constants.BINARY_PATTERN_EXTENSION;
+        String jsonPatternPath = patternPath + Constants.PATTERN_EXTENSION;
+        boolean binary = Constants.PATTERN_FORMAT == Constants.PatternFormat.BINARY;
+        Files.deleteIfExists(Paths.get(binary ? jsonPatternPath : binaryPatternPath));
+        String path = binary ? binaryPatternPath : jsonPatternPath;
+        patternWriter.write(manager, absoluteStartTime, true, path, Constants.PATTERN_FORMAT);
+        return miner.getLastEventTime();
+    }
 
+    private static void convertTraces() throws IOException {
         for (int i = Constants.START_THREAD; i <= Constants.END_THREAD; i++) {
-            // Read and process data
-            BufferedReader reader = new BufferedReader(
-                    new FileReader(Constants.THREAD_DIR + "thread." + i + ".trace"));
-            System.out.println("Starting to mine thread: " + i);
-            PatternMiner2 miner = new PatternMiner2(manager);
-            miner.mineThread(reader);
-            reader.close();
+            System.out.println("Converting trace of thread: " + i);
+            BinaryTraceWriter.convert(
+                    Constants.THREAD_DIR + "thread." + i + Constants.TRACE_EXTENSION,
+                    Constants.THREAD_DIR + "thread." + i + Constants.BINARY_TRACE_EXTENSION);
+        }
+    }
 
-            // Write data
-            BufferedWriter writer = new BufferedWriter(
-                    new FileWriter(Constants.PATTERN_DIR + "thread." + i + ".patterns"));
-            manager.dumpPatterns(writer, absoluteStartTime);
-            manager.resetPatterns();
-            writer.close();
+    /**
+     * Opens the trace of the given thread, preferring the binary trace if one has been converted. A binary trace
+     * older than the text trace was converted from a previous version of it, so the text trace is read instead.
+     */
+    private static TraceReader openTrace(int thread) throws IOException {
+        File binaryTrace = new File(Constants.THREAD_DIR + "thread." + thread + Constants.BINARY_TRACE_EXTENSION);
+        File trace = new File(Constants.THREAD_DIR + "thread." + thread + Constants.TRACE_EXTENSION);
+        if (binaryTrace.exists()) {
+            if (!trace.exists() || trace.lastModified() <= binaryTrace.lastModified()) {
+                return new BinaryTraceReader(binaryTrace.getPath());
+            }
+            System.out.println("Warning: " + binaryTrace.getPath() + " is older than " + trace.getPath()
+                    + ", reading the text trace instead. Convert the traces again to read them faster.");
         }
+        return new MappedTraceReader(trace.getPath());
     }
 }
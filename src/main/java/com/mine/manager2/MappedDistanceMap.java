@@ -0,0 +1,112 @@
+package com.mine.manager2;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DistanceMap stored in a memory-mapped file, so the distances live outside the Java heap. The lower triangle of the
+ * matrix is packed row after row as floats, which hold our distances exactly (see TriangularDistanceMap). The file is
+ * mapped in chunks of CHUNK_SIZE bytes, and a new chunk is mapped whenever a row runs past the last one.
+ *
+ * The file is a temporary one that is deleted when the map is closed. The distances can't outlive the run, since
+ * the patterns they are between aren't persisted.
+ */
+public class MappedDistanceMap implements DistanceMap {
+
+    private static final int CHUNK_SHIFT = 26;
+    private static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+    private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+    private int size = 0;
+
+    private MappedDistanceMap(Path file) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Creates an empty distance map in a new temporary file in `directory`.
+     */
+    public static MappedDistanceMap create(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        return new MappedDistanceMap(Files.createTempFile(directory, "distances", ".map"));
+    }
+
+    @Override
+    public double getDistance(int p1, int p2) {
+        if (p1 == p2) return 0.0;
+        long offset = p1 > p2 ? entryOffset(p1, p2) : entryOffset(p2, p1);
+        return chunks.get((int) (offset >>> CHUNK_SHIFT)).getFloat((int) (offset & CHUNK_MASK));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void addPattern(SubtraceRepresentation representation, DistanceKernel kernel) {
+        addPattern(kernel.getDistances(size));
+    }
+
+    /**
+     * Adds the pattern with id `size()`, given its distances to patterns 0 to `size() - 1`. Its distance to itself is
+     * 0.
+     */
+    public void addPattern(double[] distances) {
+        if (distances.length != size) {
+            throw new IllegalArgumentException("Expected " + size + " distances, got " + distances.length);
+        }
+        try {
+            mapChunks(entryOffset(size + 1, 0));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to grow distance map", e);
+        }
+        long offset = entryOffset(size, 0);
+        for (double distance : distances) {
+            chunks.get((int) (offset >>> CHUNK_SHIFT)).putFloat((int) (offset & CHUNK_MASK), (float) distance);
+            offset += Float.BYTES;
+        }
+        size++;
+    }
+
+    /**
+     * Closes and deletes the file. The space is freed once the chunks, which can't be unmapped explicitly, have been
+     * garbage collected, so the map must not be used after this.
+     */
+    @Override
+    public void close() throws IOException {
+        chunks.clear();
+        channel.close();
+        Files.delete(file);
+    }
+
+    /**
+     * The offset into the data of the distance between p1 and p2 < p1. Row p1 starts after the p1 * (p1 - 1) / 2
+     * distances of the rows before it.
+     */
+    private static long entryOffset(int p1, int p2) {
+        return ((long) p1 * (p1 - 1) / 2 + p2) * Float.BYTES;
+    }
+
+    /**
+     * Maps chunks until the data up to `end` is covered. A chunk size that's a multiple of Float.BYTES keeps every
+     * distance within one chunk.
+     */
+    private void mapChunks(long end) throws IOException {
+        while ((long) chunks.size() * CHUNK_SIZE < end) {
+            long chunkStart = chunks.size() * CHUNK_SIZE;
+            chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, chunkStart, CHUNK_SIZE));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.mine.manager2;
+
+import com.mine.Constants;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * A BK-tree over pattern representations, which finds the patterns near a subtrace using the triangle inequality
+ * instead of computing the distance to every pattern.
+ *
+ * The children of a node are bucketed by their distance to it, in buckets BUCKET_WIDTH wide, and every descendant
+ * of a child falls in that child's bucket. If a pattern x is within `radius` of the query q, then
+ * |d(q, node) - d(node, x)| <= d(q, x) < radius, so only buckets overlapping (d(q, node) - radius, d(q, node) + radius)
+ * need to be searched. Distances between patterns come from the DistanceMap, so inserting costs no distance
+ * computations.
+ *
+ * Patterns are inserted in increasing order of id, so no node has a lower id than its ancestors. A search visits the
+ * nodes it hasn't pruned in increasing order of id, so the first pattern within the radius is the lowest one and
+ * the search ends there, just as a linear scan would. Subtrees too shallow to hold a candidate are pruned as well.
+ */
+public class MetricTree {
+
+    private static final double BUCKET_WIDTH = Constants.NULL_FUNCTION_DISTANCE;
+    private static final int NO_PATTERN = -1;
+
+    private static class Node {
+        final int patternId;
+        final int depth;
+        int maxSubtreeDepth;
+        int maxBucket = -1;
+        final Map<Integer, Node> children = new HashMap<>();
+
+        Node(int patternId, int depth) {
+            this.patternId = patternId;
+            this.depth = depth;
+            this.maxSubtreeDepth = depth;
+        }
+    }
+
+    private final DistanceMap distanceMap;
+    private final ThreadLocal<PriorityQueue<Node>> searchQueues = ThreadLocal.withInitial(
+            () -> new PriorityQueue<>(Comparator.comparingInt((Node node) -> node.patternId)));
+    private Node root;
+
+    public MetricTree(DistanceMap distanceMap) {
+        this.distanceMap = distanceMap;
+    }
+
+    /**
+     * Patterns must be added in increasing order of pattern id, after their distances are in the distance map.
+     */
+    public void add(int patternId, int depth) {
+        Node newNode = new Node(patternId, depth);
+        if (root == null) {
+            root = newNode;
+            return;
+        }
+
+        Node node = root;
+        while (true) {
+            node.maxSubtreeDepth = Math.max(node.maxSubtreeDepth, depth);
+            int bucket = bucket(distanceMap.getDistance(node.patternId, patternId));
+            Node child = node.children.get(bucket);
+            if (child == null) {
+                node.children.put(bucket, newNode);
+                node.maxBucket = Math.max(node.maxBucket, bucket);
+                return;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Returns the lowest id of a pattern with id at least `fromPatternId` and depth at least `minDepth` that is
+     * strictly within `radius` of the query of `distanceKernel`, or `acceptedPatternId` if that is lower.
+     */
+    public int findLowestWithin(
+            DistanceKernel distanceKernel,
+            int minDepth,
+            double radius,
+            int fromPatternId,
+            int acceptedPatternId) {
+        if (root == null) return acceptedPatternId;
+
+        PriorityQueue<Node> searchQueue = searchQueues.get();
+        searchQueue.clear();
+        searchQueue.add(root);
+        while (!searchQueue.isEmpty()) {
+            Node node = searchQueue.poll();
+            if (acceptedPatternId != NO_PATTERN && node.patternId > acceptedPatternId) break;
+            if (node.maxSubtreeDepth < minDepth) continue;
+
+            // Beyond this distance, neither the node nor any of its children can be within the radius, so the
+            // distance computation can stop there.
+            double threshold = (node.maxBucket + 1) * BUCKET_WIDTH + radius;
+            double distance = distanceKernel.getDistanceWithin(node.patternId, threshold);
+            if (distance >= threshold) continue;
+            if (distance < radius && node.depth >= minDepth && node.patternId >= fromPatternId) {
+                acceptedPatternId = node.patternId;
+                break;
+            }
+
+            int minBucket = bucket(Math.max(0, distance - radius));
+            int maxBucket = Math.min(bucket(distance + radius), node.maxBucket);
+            for (int bucket = minBucket; bucket <= maxBucket; bucket++) {
+                Node child = node.children.get(bucket);
+                if (child != null) searchQueue.add(child);
+            }
+        }
+        return acceptedPatternId;
+    }
+
+    private static int bucket(double distance) {
+        return (int) Math.floor(distance / BUCKET_WIDTH);
+    }
+}
@@ -1,43 +1,81 @@
 package com.mine.manager2;
 
 import com.mine.Constants;
-import org.json.JSONArray;
-import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
+/**
+ * The instances of a pattern in one thread. Depending on the instance mode, either the interval of every instance
+ * is kept, or only statistics of their durations, or both. Without intervals, the interval list stays empty.
+ */
 public class Pattern2 {
 
     private final int patternId;
     private final int depth;
     private final TreeMap<Integer, Integer> patternIdCounts = new TreeMap<>();
     private final TreeMap<Integer, Integer> baseFunctionCounts = new TreeMap<>();
-    private final List<Long> startTimes = new ArrayList<>();
-    private final List<Long> durations = new ArrayList<>();
+    private final boolean keepIntervals;
+    private final IntervalList intervals;
+    private final DurationHistogram durations; // Null unless duration statistics are kept
 
     public Pattern2(Integer patternId, SubtraceRepresentation representation) {
-        this.patternId =patternId;
-        this.depth = representation.getDepth();
+        this(patternId, representation, Constants.INSTANCE_MODE);
+    }
+
+    public Pattern2(Integer patternId, SubtraceRepresentation representation, Constants.InstanceMode instanceMode) {
+        this(
+                patternId,
+                representation.getDepth(),
+                instanceMode != Constants.InstanceMode.AGGREGATE,
+                new IntervalList(),
+                instanceMode != Constants.InstanceMode.INTERVALS ? new DurationHistogram() : null);
+    }
+
+    private Pattern2(
+            int patternId,
+            int depth,
+            boolean keepIntervals,
+            IntervalList intervals,
+            DurationHistogram durations) {
+        this.patternId = patternId;
+        this.depth = depth;
+        this.keepIntervals = keepIntervals;
+        this.intervals = intervals;
+        this.durations = durations;
+    }
+
+    /**
+     * Copies this pattern and the instances recorded so far.
+     */
+    public Pattern2 copy() {
+        Pattern2 copy = new Pattern2(
+                patternId, depth, keepIntervals, intervals.copy(), durations != null ? durations.copy() : null);
+        copy.patternIdCounts.putAll(patternIdCounts);
+        copy.baseFunctionCounts.putAll(baseFunctionCounts);
+        return copy;
     }
 
     public void addInstance(RepresentationContainer container) {
         SubtraceRepresentation representation = container.getRepresentation();
-        for (Map.Entry<Integer, Integer> patternIdCount : representation.getPatternIdCounts().entrySet()) {
-            Integer patternId = patternIdCount.getKey();
+        PatternIdMultiset representationPatternIds = representation.getPatternIds();
+        for (int i = 0; i < representationPatternIds.size(); i++) {
+            Integer patternId = representationPatternIds.getId(i);
             Integer currentCount = patternIdCounts.get(patternId);
             if (currentCount == null) currentCount = 0;
-            patternIdCounts.put(patternId, currentCount + patternIdCount.getValue());
+            patternIdCounts.put(patternId, currentCount + representationPatternIds.getCount(i));
         }
         Integer baseFunction = representation.getBaseFunction();
         Integer currentCount = baseFunctionCounts.get(baseFunction);
         if (currentCount == null) currentCount = 0;
         baseFunctionCounts.put(baseFunction, currentCount + 1);
 
-        startTimes.add(container.getStartTime());
-        durations.add(container.getEndTime() - container.getStartTime());
+        long duration = container.getEndTime() - container.getStartTime();
+        if (keepIntervals) intervals.add(container.getStartTime(), duration);
+        if (durations != null) durations.add(duration);
     }
 
     public int getPatternId() {
@@ -52,19 +90,33 @@ public class Pattern2 {
         return patternIdCounts;
     }
 
-    public List<Long> getStartTimes() {
-        return startTimes;
+    public TreeMap<Integer, Integer> getBaseFunctionCounts() {
+        return baseFunctionCounts;
     }
 
-    public List<Long> getDurations() {
+    public IntervalList getIntervals() {
+        return intervals;
+    }
+
+    /**
+     * The duration statistics of the instances, or null if they aren't kept.
+     */
+    public DurationHistogram getDurations() {
         return durations;
     }
 
+    /**
+     * The number of instances, whether or not their intervals are kept.
+     */
+    public long getInstanceCount() {
+        return keepIntervals ? intervals.size() : durations.getCount();
+    }
+
     public void reset() {
         patternIdCounts.clear();
         baseFunctionCounts.clear();
-        startTimes.clear();
-        durations.clear();
+        intervals.clear();
+        if (durations != null) durations.clear();
     }
 
     public String prettyString(Map<Integer, Integer> singleFunctionPatterns) {
@@ -102,51 +154,92 @@ public class Pattern2 {
         return sb.toString();
     }
 
-    public JSONObject serializeRepresentation(Map<Integer, Integer> singleFunctionPatterns) {
-        JSONArray baseFunctions = new JSONArray();
+    /**
+     * Keys are written in the order org.json used to write them in: depth, baseFunctions (count, baseFunction) and
+     * patternIds (patternId, count).
+     */
+    public void serializeRepresentation(JsonStreamWriter writer, Map<Integer, Integer> singleFunctionPatterns)
+            throws IOException {
+        writer.beginObject();
+        writer.name("depth").value(depth);
+
+        writer.name("baseFunctions").beginArray();
         for (Map.Entry<Integer, Integer> baseFunctionCount : baseFunctionCounts.entrySet()) {
-            baseFunctions.put(
-                    new JSONObject()
-                            .put("baseFunction", baseFunctionCount.getKey())
-                            .put("count", baseFunctionCount.getValue()));
+            writer.beginObject()
+                    .name("count").value(baseFunctionCount.getValue())
+                    .name("baseFunction").value(baseFunctionCount.getKey())
+                    .endObject();
         }
+        writer.endArray();
 
-        JSONArray patternIds = new JSONArray();
+        writer.name("patternIds").beginArray();
         for (Map.Entry<Integer, Integer> patternIdCount : patternIdCounts.entrySet()) {
             if (patternIdCount.getKey() != Constants.NULL_PATTERN_ID) { // Don't bother adding the null pattern
-                if (singleFunctionPatterns.containsKey(patternIdCount.getKey())) {
-                    patternIds.put(
-                            new JSONObject()
-                                    .put("patternId", singleFunctionPatterns.get(patternIdCount.getKey()))
-                                    .put("count", patternIdCount.getValue()));
-                } else {
-                    patternIds.put(
-                            new JSONObject()
-                                    .put("patternId", Constants.PATTERN_BASE + patternIdCount.getKey())
-                                    .put("count", patternIdCount.getValue()));
-                }
+                writer.beginObject()
+                        .name("patternId").value(serializedPatternId(patternIdCount.getKey(), singleFunctionPatterns))
+                        .name("count").value(patternIdCount.getValue())
+                        .endObject();
             }
         }
+        writer.endArray();
+
+        writer.endObject();
+    }
+
+    /**
+     * Single function patterns are serialized as their base function, and other patterns offset by PATTERN_BASE.
+     */
+    static int serializedPatternId(int patternId, Map<Integer, Integer> singleFunctionPatterns) {
+        Integer baseFunction = singleFunctionPatterns.get(patternId);
+        return baseFunction != null ? baseFunction : Constants.PATTERN_BASE + patternId;
+    }
 
-        return new JSONObject()
-                .put("depth", depth)
-                .put("baseFunctions", baseFunctions)
-                .put("patternIds", patternIds);
-    }
-
-    public JSONObject serialize(Map<Integer, Integer> singleFunctionPatterns, Long absoluteStartTime) {
-        JSONObject representation = serializeRepresentation(singleFunctionPatterns);
-        JSONArray intervals = new JSONArray();
-        for (int i = 0; i < startTimes.size(); i++) {
-            long relativeStartTime = startTimes.get(i) - absoluteStartTime;
-            long relativeEndTime = relativeStartTime + durations.get(i);
-            intervals.put(new JSONArray()
-                    .put(relativeStartTime)
-                    .put(relativeEndTime));
+    /**
+     * Keys are written in the order count, total, min, max, p50, p90, p99, which is not the order org.json wrote
+     * them in.
+     */
+    public void serializeDurations(JsonStreamWriter writer) throws IOException {
+        writer.beginObject()
+                .name("count").value(durations.getCount())
+                .name("total").value(durations.getTotal())
+                .name("min").value(durations.getMin())
+                .name("max").value(durations.getMax())
+                .name("p50").value(durations.getPercentile(0.5))
+                .name("p90").value(durations.getPercentile(0.9))
+                .name("p99").value(durations.getPercentile(0.99))
+                .endObject();
+    }
+
+    /**
+     * Keys are written in the order durations, intervals, id, representation, leaving out durations or intervals if
+     * they aren't kept. This is the order org.json wrote them in, so in the INTERVALS instance mode dumps are byte
+     * for byte the same as before they were streamed. With durations, only the order of the duration statistics
+     * differs.
+     */
+    public void serialize(JsonStreamWriter writer, Map<Integer, Integer> singleFunctionPatterns, Long absoluteStartTime)
+            throws IOException {
+        writer.beginObject();
+        if (durations != null) {
+            writer.name("durations");
+            serializeDurations(writer);
+        }
+        if (keepIntervals) {
+            writer.name("intervals").beginArray();
+            try (IntervalList.Cursor interval = intervals.cursor()) {
+                while (interval.next()) {
+                    long relativeStartTime = interval.getStartTime() - absoluteStartTime;
+                    long relativeEndTime = relativeStartTime + interval.getDuration();
+                    writer.beginArray()
+                            .value(relativeStartTime)
+                            .value(relativeEndTime)
+                            .endArray();
+                }
+            }
+            writer.endArray();
         }
-        return new JSONObject()
-                .put("id", Constants.PATTERN_BASE + patternId)
-                .put("representation", representation)
-                .put("intervals", intervals);
+        writer.name("id").value(Constants.PATTERN_BASE + patternId);
+        writer.name("representation");
+        serializeRepresentation(writer, singleFunctionPatterns);
+        writer.endObject();
     }
 }
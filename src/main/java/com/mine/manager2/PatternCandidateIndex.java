@@ -0,0 +1,90 @@
+package com.mine.manager2;
+
+import com.mine.IntList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Indexes pattern ids by depth, both across all patterns and within the patterns of each base function. Within
+ * every list, pattern ids are in increasing order. The same groups of patterns are also kept in metric trees.
+ *
+ * A pattern only accepts subtraces of at most its own depth, and patterns with a different base function are at
+ * least a function distance away from a subtrace. This lets matching skip patterns that can't accept a subtrace
+ * without computing any distances to them.
+ */
+public class PatternCandidateIndex {
+
+    private final DistanceMap distanceMap;
+    private final List<IntList> patternIdsByDepth = new ArrayList<>();
+    private final Map<Integer, List<IntList>> patternIdsByBaseFunction = new HashMap<>();
+    private final MetricTree metricTree;
+    private final Map<Integer, MetricTree> metricTreesByBaseFunction = new HashMap<>();
+
+    public PatternCandidateIndex(DistanceMap distanceMap) {
+        this.distanceMap = distanceMap;
+        this.metricTree = new MetricTree(distanceMap);
+    }
+
+    /**
+     * Patterns must be added in increasing order of pattern id, after their distances are in the distance map.
+     */
+    public void add(int patternId, SubtraceRepresentation representation) {
+        int baseFunction = representation.getBaseFunction();
+        int depth = representation.getDepth();
+        add(patternIdsByDepth, patternId, depth);
+        List<IntList> baseFunctionPatternIds = patternIdsByBaseFunction.get(baseFunction);
+        if (baseFunctionPatternIds == null) {
+            baseFunctionPatternIds = new ArrayList<>();
+            patternIdsByBaseFunction.put(baseFunction, baseFunctionPatternIds);
+        }
+        add(baseFunctionPatternIds, patternId, depth);
+
+        metricTree.add(patternId, depth);
+        MetricTree baseFunctionMetricTree = metricTreesByBaseFunction.get(baseFunction);
+        if (baseFunctionMetricTree == null) {
+            baseFunctionMetricTree = new MetricTree(distanceMap);
+            metricTreesByBaseFunction.put(baseFunction, baseFunctionMetricTree);
+        }
+        baseFunctionMetricTree.add(patternId, depth);
+    }
+
+    /**
+     * The ids of all patterns, indexed by depth.
+     */
+    public List<IntList> getPatternIdsByDepth() {
+        return patternIdsByDepth;
+    }
+
+    /**
+     * The ids of the patterns with the given base function, indexed by depth.
+     */
+    public List<IntList> getPatternIdsByDepth(int baseFunction) {
+        List<IntList> baseFunctionPatternIds = patternIdsByBaseFunction.get(baseFunction);
+        return baseFunctionPatternIds != null ? baseFunctionPatternIds : Collections.emptyList();
+    }
+
+    /**
+     * A metric tree over all patterns.
+     */
+    public MetricTree getMetricTree() {
+        return metricTree;
+    }
+
+    /**
+     * A metric tree over the patterns with the given base function, or null if there are none.
+     */
+    public MetricTree getMetricTree(int baseFunction) {
+        return metricTreesByBaseFunction.get(baseFunction);
+    }
+
+    private static void add(List<IntList> patternIdsByDepth, int patternId, int depth) {
+        while (patternIdsByDepth.size() <= depth) {
+            patternIdsByDepth.add(new IntList());
+        }
+        patternIdsByDepth.get(depth).add(patternId);
+    }
+}
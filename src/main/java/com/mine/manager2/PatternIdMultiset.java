@@ -0,0 +1,123 @@
+package com.mine.manager2;
+
+import java.util.Arrays;
+import java.util.TreeMap;
+
+/**
+ * Multiset of pattern ids, kept as primitive arrays of the distinct ids in increasing order and their counts. Unlike
+ * a TreeMap<Integer, Integer>, adding an id and iterating don't allocate, apart from growing the arrays. A subtrace
+ * only calls a handful of distinct patterns, so inserting into the middle of the arrays is cheap, and the most
+ * common case, a pattern just created with the highest id so far, is an append.
+ *
+ * A hash of the distinct ids is kept up to date as ids are added, so interning the set of ids doesn't have to hash
+ * them all again.
+ */
+public class PatternIdMultiset {
+
+    private int[] ids;
+    private int[] counts;
+    private int size = 0;
+    private int idHash = 0;
+
+    public PatternIdMultiset() {
+        this(4);
+    }
+
+    public PatternIdMultiset(int initialCapacity) {
+        ids = new int[Math.max(initialCapacity, 1)];
+        counts = new int[ids.length];
+    }
+
+    public void add(int id) {
+        int index;
+        if (size == 0 || ids[size - 1] < id) {
+            index = size;
+        } else if (ids[size - 1] == id) {
+            counts[size - 1]++;
+            return;
+        } else {
+            index = Arrays.binarySearch(ids, 0, size, id);
+            if (index >= 0) {
+                counts[index]++;
+                return;
+            }
+            index = -index - 1;
+        }
+
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            counts = Arrays.copyOf(counts, size * 2);
+        }
+        System.arraycopy(ids, index, ids, index + 1, size - index);
+        System.arraycopy(counts, index, counts, index + 1, size - index);
+        ids[index] = id;
+        counts[index] = 1;
+        size++;
+        idHash += hashId(id);
+    }
+
+    /**
+     * The number of distinct ids.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The `index`th smallest distinct id.
+     */
+    public int getId(int index) {
+        return ids[index];
+    }
+
+    /**
+     * The count of the `index`th smallest distinct id.
+     */
+    public int getCount(int index) {
+        return counts[index];
+    }
+
+    /**
+     * A hash of the distinct ids, which is the same for any multiset with the same distinct ids.
+     */
+    public int getIdHash() {
+        return idHash;
+    }
+
+    public void clear() {
+        size = 0;
+        idHash = 0;
+    }
+
+    public PatternIdMultiset copy() {
+        PatternIdMultiset copy = new PatternIdMultiset(size);
+        System.arraycopy(ids, 0, copy.ids, 0, size);
+        System.arraycopy(counts, 0, copy.counts, 0, size);
+        copy.size = size;
+        copy.idHash = idHash;
+        return copy;
+    }
+
+    /**
+     * The distinct ids, in increasing order.
+     */
+    public int[] toIdArray() {
+        return Arrays.copyOf(ids, size);
+    }
+
+    /**
+     * Summing the hashes of the ids makes the hash independent of the order they were added in.
+     */
+    static int hashId(int id) {
+        int hash = id * 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+
+    public TreeMap<Integer, Integer> toTreeMap() {
+        TreeMap<Integer, Integer> idCounts = new TreeMap<>();
+        for (int i = 0; i < size; i++) {
+            idCounts.put(ids[i], counts[i]);
+        }
+        return idCounts;
+    }
+}
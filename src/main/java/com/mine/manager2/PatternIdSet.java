@@ -0,0 +1,84 @@
+package com.mine.manager2;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of pattern ids, as interned by a PatternIdSetInterner. Equal sets from the same interner are the
+ * same instance, and have the same id, so they can be compared by reference.
+ */
+public final class PatternIdSet {
+
+    private final int[] patternIds;
+    private final int hash;
+    private final int id;
+
+    PatternIdSet(int[] patternIds, int hash, int id) {
+        this.patternIds = patternIds;
+        this.hash = hash;
+        this.id = id;
+    }
+
+    /**
+     * Identifies this set among those of its interner.
+     */
+    public int getId() {
+        return id;
+    }
+
+    public int size() {
+        return patternIds.length;
+    }
+
+    /**
+     * The `index`th smallest pattern id.
+     */
+    public int getPatternId(int index) {
+        return patternIds[index];
+    }
+
+    /**
+     * Compares contents, which is only needed while interning. Interned sets can be compared by reference.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o instanceof PatternIdSet) {
+            PatternIdSet other = (PatternIdSet) o;
+            return hash == other.hash && Arrays.equals(patternIds, other.patternIds);
+        }
+        if (o instanceof Probe) return o.equals(this);
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Looks up the interned set with the same ids as a multiset, without copying them.
+     */
+    static final class Probe {
+        private PatternIdMultiset multiset;
+
+        void set(PatternIdMultiset multiset) {
+            this.multiset = multiset;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof PatternIdSet)) return false;
+            PatternIdSet set = (PatternIdSet) o;
+            if (set.hash != multiset.getIdHash() || set.patternIds.length != multiset.size()) return false;
+            for (int i = 0; i < set.patternIds.length; i++) {
+                if (set.patternIds[i] != multiset.getId(i)) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return multiset.getIdHash();
+        }
+    }
+}
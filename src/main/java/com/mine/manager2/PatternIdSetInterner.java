@@ -0,0 +1,41 @@
+package com.mine.manager2;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Canonicalizes sets of pattern ids, so that every equal set is represented by one PatternIdSet. The same sets of
+ * pattern ids recur constantly while mining, and once interned they can be compared and hashed in constant time.
+ *
+ * Looking up a set that's already interned doesn't allocate. Any number of threads can intern sets at once.
+ */
+public class PatternIdSetInterner {
+
+    private final Map<Object, PatternIdSet> sets = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final ThreadLocal<PatternIdSet.Probe> probes = ThreadLocal.withInitial(PatternIdSet.Probe::new);
+
+    /**
+     * Returns the interned set of the distinct ids of `patternIds`.
+     */
+    public PatternIdSet intern(PatternIdMultiset patternIds) {
+        PatternIdSet.Probe probe = probes.get();
+        probe.set(patternIds);
+        PatternIdSet set = sets.get(probe);
+        probe.set(null);
+        if (set != null) return set;
+
+        PatternIdSet newSet = new PatternIdSet(
+                patternIds.toIdArray(), patternIds.getIdHash(), nextId.getAndIncrement());
+        set = sets.putIfAbsent(newSet, newSet);
+        return set != null ? set : newSet;
+    }
+
+    /**
+     * The number of distinct sets interned.
+     */
+    public int size() {
+        return sets.size();
+    }
+}
@@ -1,10 +1,12 @@
 package com.mine.manager2;
 
 import com.mine.Constants;
-import org.json.JSONArray;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -12,128 +14,159 @@ import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
+/**
+ * Records the pattern instances found in one thread. The patterns themselves live in a PatternRegistry, which can be
+ * shared by the managers of several threads that are mined at the same time.
+ *
+ * Once the intervals of the instances take more heap than the instance heap budget, they are spilled to temporary
+ * files in the spill directory, and streamed back from there when the patterns are dumped. Instances are verified
+ * as they are recorded, so this works the same in every instance mode, including the aggregate one where no
+ * intervals are kept.
+ */
 public class PatternManager2 {
 
-    private DistanceMap distanceMap;
-    private List<SubtraceRepresentation> patternRepresentations = new ArrayList<>();
+    // Intervals of a pattern are spilled in blocks of at least this size, unless that can't meet the budget
+    private static final int MIN_SPILL_BYTES = 4096;
+
+    private final PatternRegistry registry;
+    private final Constants.InstanceMode instanceMode;
+    private final long instanceHeapBudget;
+    private final Path spillDirectory;
+    private long instanceHeapBytes = 0;
+    private long spillThreshold;
     private List<Pattern2> patternInstances = new ArrayList<>();
-    private Map<Integer, Integer> patternInstancesOnBaseCount = new HashMap<>();
+    private InstanceVerifier verifier;
 
     public PatternManager2(DistanceMap distanceMap) {
-        this.distanceMap = distanceMap;
-        initializeNullPattern();
+        this(new PatternRegistry(distanceMap));
     }
 
-    private void initializeNullPattern() {
-        SubtraceRepresentation nullRepresentation = new SubtraceRepresentation(distanceMap, Constants.NULL_FUNCTION_ID);
-        nullRepresentation.setDepth(0);
-        patternRepresentations.add(nullRepresentation);
-
-        // Update distance map to include null pattern
-        List<Double> newDistances = new ArrayList<>();
-        newDistances.add(0.0);
-        distanceMap.get().add(newDistances);
+    public PatternManager2(PatternRegistry registry) {
+        this(registry, Constants.INSTANCE_MODE, Constants.INSTANCE_HEAP_BUDGET, Paths.get(Constants.SPILL_DIR));
+    }
 
-        // Update instances
-        patternInstances.add(new Pattern2(Constants.NULL_PATTERN_ID, nullRepresentation));
+    public PatternManager2(
+            PatternRegistry registry,
+            Constants.InstanceMode instanceMode,
+            long instanceHeapBudget,
+            Path spillDirectory) {
+        this.registry = registry;
+        this.instanceMode = instanceMode;
+        this.instanceHeapBudget = instanceHeapBudget;
+        this.spillDirectory = spillDirectory;
+        this.spillThreshold = instanceHeapBudget;
+        this.verifier = new InstanceVerifier(Constants.VERIFICATION, registry);
     }
 
-    public double getAcceptanceDistance(SubtraceRepresentation representation1, SubtraceRepresentation representation2) {
-        return Constants.NULL_FUNCTION_DISTANCE * Math.min(representation1.getDepth(), representation2.getDepth());
+    public PatternRegistry getRegistry() {
+        return registry;
     }
 
     public DistanceMap getDistanceMap() {
-        return distanceMap;
+        return registry.getDistanceMap();
     }
 
     public int updatePatterns(RepresentationContainer container) {
-        SubtraceRepresentation newRepresentation = container.getRepresentation();
+        int patternId = registry.matchPattern(container.getRepresentation());
+        Pattern2 pattern = getPattern(patternId);
+        IntervalList intervals = pattern.getIntervals();
+        int heapBytes = intervals.getHeapBytes();
+        pattern.addInstance(container);
+        verifier.addInstance(patternId, pattern.getDepth(), container);
+        instanceHeapBytes += intervals.getHeapBytes() - heapBytes;
+        if (instanceHeapBytes > spillThreshold) spillIntervals();
+        return patternId;
+    }
 
-        // Update depth
-        int maxDepth = 0;
-        for (int patternId : newRepresentation.getPatternIds()) {
-            maxDepth = Math.max(maxDepth, patternRepresentations.get(patternId).getDepth());
+    /**
+     * Spills the intervals of every pattern holding at least MIN_SPILL_BYTES of them, and if that isn't enough to
+     * get back under the budget, the intervals of every pattern. What is left on the heap then only grows with the
+     * number of patterns, and if even that is over the budget, spilling waits until the heap taken has doubled.
+     */
+    private void spillIntervals() {
+        for (int minSpillBytes : new int[]{MIN_SPILL_BYTES, 0}) {
+            spillIntervals(minSpillBytes);
+            if (instanceHeapBytes <= instanceHeapBudget) break;
         }
-        newRepresentation.setDepth(maxDepth + 1);
+        spillThreshold = Math.max(instanceHeapBudget, 2 * instanceHeapBytes);
+    }
 
-        for (int patternId = 0; patternId < patternRepresentations.size(); patternId++) {
-            SubtraceRepresentation representation = patternRepresentations.get(patternId);
-            double acceptanceDistance = getAcceptanceDistance(representation, newRepresentation);
-            double distance = newRepresentation.getDistance(representation);
-            // Accept subtrace only from patterns whose depths which are greater.
-            if (distance < acceptanceDistance && representation.getDepth() >= newRepresentation.getDepth()) {
-                patternInstances.get(patternId).addInstance(container);
-                return patternId;
+    private void spillIntervals(int minSpillBytes) {
+        try {
+            for (Pattern2 pattern : patternInstances) {
+                IntervalList intervals = pattern.getIntervals();
+                int heapBytes = intervals.getHeapBytes();
+                if (heapBytes < minSpillBytes) continue;
+                intervals.spill(spillDirectory);
+                instanceHeapBytes += intervals.getHeapBytes() - heapBytes;
             }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to spill pattern instances", e);
         }
+    }
 
-        // None of the existing patterns accepts newRepresentation
-        // Update distanceMap
-        List<Double> newDistances = new ArrayList<>();
-        for (int patternId = 0; patternId < patternRepresentations.size(); patternId++) {
-            SubtraceRepresentation representation = patternRepresentations.get(patternId);
-            double distance = newRepresentation.getDistance(representation);
-            newDistances.add(distance);
-            distanceMap.get().get(patternId).add(distance);
+    /**
+     * Patterns registered by other threads, or by this one, are only given an instance list here once this thread
+     * first needs one.
+     */
+    private Pattern2 getPattern(int patternId) {
+        while (patternInstances.size() <= patternId) {
+            int newPatternId = patternInstances.size();
+            patternInstances.add(new Pattern2(newPatternId, registry.getRepresentation(newPatternId), instanceMode));
         }
-        newDistances.add(0.0);
-        distanceMap.get().add(newDistances);
-
-        // Update representation list
-        int newPatternId = patternRepresentations.size();
-        patternRepresentations.add(newRepresentation);
-
-        // Update instances
-        Pattern2 pattern = new Pattern2(newPatternId, newRepresentation);
-        pattern.addInstance(container);
-        patternInstances.add(pattern);
-
-        return newPatternId;
+        return patternInstances.get(patternId);
     }
 
     /**
      * Accounts for pattern instances that don't occur on top of another pattern. This is only
-     * used during the verification stage.
+     * used for verification.
      */
     public void addPatternOnBase(Integer patternId) {
-        Integer currentCount = patternInstancesOnBaseCount.get(patternId);
-        currentCount = currentCount != null ? currentCount : 0;
-        patternInstancesOnBaseCount.put(patternId, currentCount + 1);
+        verifier.addPatternOnBase(patternId);
+    }
+
+    /**
+     * Copies the instances recorded so far, so that they can be dumped from another thread while mining continues.
+     * Every interval list is spilled first, so the copy only shares the spill files and takes heap in proportion to
+     * the number of patterns rather than instances. The snapshot must be reset once it has been dumped.
+     */
+    public PatternManager2 snapshot() {
+        spillIntervals(0);
+        PatternManager2 snapshot = new PatternManager2(registry, instanceMode, instanceHeapBudget, spillDirectory);
+        for (Pattern2 pattern : patternInstances) {
+            snapshot.patternInstances.add(pattern.copy());
+        }
+        snapshot.verifier = verifier.copy();
+        return snapshot;
     }
 
     public void resetPatterns() {
         for (Pattern2 pattern : patternInstances) {
             pattern.reset();
         }
-        patternInstancesOnBaseCount.clear();
+        instanceHeapBytes = 0;
+        spillThreshold = instanceHeapBudget;
+        verifier.clear();
     }
 
     public void dumpPatterns(BufferedWriter writer, Long absoluteStartTime) throws IOException {
-        verifyInstances();
-        Map<Integer, Integer> singleFunctionPatterns = new HashMap<>(); // maps patternIds of single function patterns to their base functions.
-        for (int patternId = 0; patternId < patternRepresentations.size(); patternId++) {
-            if (patternRepresentations.get(patternId).getDepth() == 1) {
-                singleFunctionPatterns.put(patternId, patternRepresentations.get(patternId).getBaseFunction());
-            }
-        }
-
-        // Since the pattern manager contains pattern shapes from previous threads, we filter out patterns without any instances
-        // in this thread. We also filter out single function patterns, since they are trivial, and base patterns, which are just
-        // fictitious patterns used during pattern verification.
-        List<Pattern2> filteredPatternInstances = patternInstances.stream().filter(pattern ->
-                !(singleFunctionPatterns.containsKey(pattern.getPatternId()) || pattern.getStartTimes().isEmpty())
-        ).collect(Collectors.toList());
+        dumpPatterns(writer, absoluteStartTime, true);
+    }
 
-        List<Pattern2> sortedPatternInstances = filteredPatternInstances.stream().sorted(
-                Comparator.comparing(Pattern2::getDepth)
-        ).collect(Collectors.toList());
+    /**
+     * Verification should be skipped when dumping a thread that hasn't been mined to the end, since instances
+     * of subtraces that are still open aren't accounted for yet.
+     */
+    public void dumpPatterns(BufferedWriter writer, Long absoluteStartTime, boolean verify) throws IOException {
+        Map<Integer, Integer> singleFunctionPatterns = new HashMap<>(); // maps patternIds of single function patterns to their base functions.
+        List<Pattern2> sortedPatternInstances = getPatternsToDump(singleFunctionPatterns, verify);
 
-        JSONArray serializedPatterns = new JSONArray();
+        JsonStreamWriter jsonWriter = new JsonStreamWriter(writer);
+        jsonWriter.beginArray();
         for (Pattern2 pattern : sortedPatternInstances) {
-            serializedPatterns.put(pattern.serialize(singleFunctionPatterns, absoluteStartTime));
+            pattern.serialize(jsonWriter, singleFunctionPatterns, absoluteStartTime);
         }
-        writer.write(serializedPatterns.toString());
-//        writer.write(serializedPatterns.toString(2)); // Used for pretty printing
+        jsonWriter.endArray();
 
 //        writer.write("\n");
 //        writer.write("\n");
@@ -148,106 +181,36 @@ public class PatternManager2 {
     }
 
     /**
-     * Verifies:
-     * 1. Patterns have constituent patterns with strictly lower depth.
-     * 2. The pattern instances instances of the patterns for a given depth occur on disjoint time intervals.
-     * 3. All patterns occurences are accounted for wherever they occur (except the first pattern).
+     * Writes the same patterns as `dumpPatterns`, in the binary pattern format.
      */
-    private void verifyInstances() {
-        System.out.println("Starting pattern verification.");
-        verifyLowerDepthReferencing();
-        verifyDisjointIntervals();
-        verifyPatternOccurenceCounts();
-        System.out.println("Pattern verification finished.");
-    }
-
-    private void verifyLowerDepthReferencing() {
-        for (Pattern2 pattern: patternInstances) {
-            for (int patternId : pattern.getPatternIdCounts().keySet()) {
-                if (!(patternRepresentations.get(patternId).getDepth() < pattern.getDepth())) {
-                    System.out.println("Faiure: depth of constituent pattern is not strictly less that current pattern.");
-                }
-            }
-        }
+    public void dumpBinaryPatterns(BinaryPatternWriter writer, long absoluteStartTime, boolean verify)
+            throws IOException {
+        Map<Integer, Integer> singleFunctionPatterns = new HashMap<>();
+        writer.write(getPatternsToDump(singleFunctionPatterns, verify), singleFunctionPatterns, absoluteStartTime);
     }
 
-    private void verifyDisjointIntervals() {
-        int maxDepth = 0;
-        for (Pattern2 pattern : patternInstances) {
-            maxDepth = Math.max(maxDepth, pattern.getDepth());
-        }
-
-        List<List<Pattern2>> patternsByDepth = new ArrayList<>();
-        // Initialized patternsByDepth
-        for (int i = 0; i <= maxDepth; i++) {
-            patternsByDepth.add(new ArrayList<>());
-        }
-
-        // Populate ordered patterns
-        for (Pattern2 pattern : patternInstances) {
-            patternsByDepth.get(pattern.getDepth()).add(pattern);
-        }
-
-        // Verify patterns of the same depth are disjoint
-        for (List<Pattern2> patterns : patternsByDepth) {
-            List<Interval> intervals = new ArrayList<>();
-            for (Pattern2 pattern : patterns) {
-                List<Long> startTimes = pattern.getStartTimes();
-                List<Long> durations = pattern.getDurations();
-                for (int i = 0; i < startTimes.size(); i++) {
-                    intervals.add(new Interval(startTimes.get(i), durations.get(i)));
-                }
-            }
-            intervals.sort((i1, i2) -> {
-                if (i1.startTime - i2.startTime > 0) {
-                    return 1;
-                } else if (i1.startTime == i2.startTime) {
-                    return 0;
-                } else {
-                    return -1;
-                }
-            });
-            for (int i = 0; i < intervals.size() - 1; i++) {
-                if (!(intervals.get(i + 1).startTime >= intervals.get(i).startTime + intervals.get(i).duration)) {
-                    System.out.println("Failure: intervals of two patterns of the same depth or overlapping.");
-                }
-            }
-        }
-    }
-
-    public void verifyPatternOccurenceCounts() {
-        List<Integer> patternOccurenceCount = new ArrayList<>();
-        for (Pattern2 pattern: patternInstances) {
-            patternOccurenceCount.add(pattern.getStartTimes().size());
-        }
-        for (Pattern2 pattern : patternInstances) {
-            for (Map.Entry<Integer, Integer> patternIdCount : pattern.getPatternIdCounts().entrySet()) {
-                int patternId = patternIdCount.getKey();
-                int currentCount = patternOccurenceCount.get(patternId);
-                patternOccurenceCount.set(patternId, currentCount - patternIdCount.getValue());
-            }
-        }
-        for (Map.Entry<Integer, Integer> patternIdCount : patternInstancesOnBaseCount.entrySet()) {
-            int patternId = patternIdCount.getKey();
-            int currentCount = patternOccurenceCount.get(patternId);
-            patternOccurenceCount.set(patternId, currentCount - patternIdCount.getValue());
-        }
-        // Ignore the null pattern and the base pattern
-        for (int patternId = 1; patternId < patternOccurenceCount.size(); patternId++) {
-            int count = patternOccurenceCount.get(patternId);
-            if (count != 0) {
-                System.out.println("Failure: " + count + " occurences of pattern " + patternId + " are not accounted for.");
+    /**
+     * Returns the patterns to dump, in the order they are dumped in, and fills `singleFunctionPatterns`.
+     */
+    private List<Pattern2> getPatternsToDump(Map<Integer, Integer> singleFunctionPatterns, boolean verify) {
+        List<SubtraceRepresentation> patternRepresentations = registry.getRepresentations();
+        // The other invariants are checked as instances are recorded
+        if (verify) verifier.verifyOccurrenceCounts();
+        for (int patternId = 0; patternId < patternRepresentations.size(); patternId++) {
+            if (patternRepresentations.get(patternId).getDepth() == 1) {
+                singleFunctionPatterns.put(patternId, patternRepresentations.get(patternId).getBaseFunction());
             }
         }
-    }
 
-    private static class Interval {
-        long startTime;
-        long duration;
+        // Since the pattern manager contains pattern shapes from previous threads, we filter out patterns without any instances
+        // in this thread. We also filter out single function patterns, since they are trivial, and base patterns, which are just
+        // fictitious patterns used during pattern verification.
+        List<Pattern2> filteredPatternInstances = patternInstances.stream().filter(pattern ->
+                !(singleFunctionPatterns.containsKey(pattern.getPatternId()) || pattern.getInstanceCount() == 0)
+        ).collect(Collectors.toList());
 
-        Interval(long startTime, long duration) {
-            this.startTime = startTime;
-            this.duration = duration;
-        }
+        return filteredPatternInstances.stream().sorted(
+                Comparator.comparing(Pattern2::getDepth)
+        ).collect(Collectors.toList());
     }
 }
\ No newline at end of file
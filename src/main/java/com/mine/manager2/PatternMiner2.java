@@ -1,8 +1,8 @@
 package com.mine.manager2;
 
 import com.mine.Constants;
+import com.mine.TraceReader;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.util.ArrayList;
 
@@ -11,6 +11,7 @@ public class PatternMiner2 {
     private PatternManager2 manager;
     private ArrayList<RepresentationContainer> representationForLevel = new ArrayList<>();
     private int stackLevel = 0;
+    private long lastEventTime = Long.MIN_VALUE;
 
     /**
      * We can imagine a fictitious function entrance right at the beginning, acting as the base function for the whole
@@ -25,39 +26,41 @@ public class PatternMiner2 {
     }
 
     /**
-     * Reads every line from the thread and adds any pattern that it detects into the pattern manager.
+     * Reads every event from the thread and adds any pattern that it detects into the pattern manager.
      */
-    public void mineThread(BufferedReader reader) throws IOException {
-        String line = reader.readLine();
-
+    public void mineThread(TraceReader reader) throws IOException {
         int count = 0;
-        while (line != null) {
+        while (reader.next()) {
             if (count % 1000000 == 0) System.out.println(count);
             if (count == 100000000) break;
             count++;
 
-            String[] record = line.split("\t");
-
-            int functionId = Integer.parseInt(record[0]);
-            int dir = Integer.parseInt(record[1]);
-            long time = Long.parseLong(record[2]);
-
-            processEvent(functionId, dir, time);
-
-            line = reader.readLine();
+            processEvent(reader.getFunctionId(), reader.getDir(), reader.getTime());
         }
     }
 
+    /**
+     * The time of the last event processed, which is the end time of the thread once it has been mined.
+     */
+    public long getLastEventTime() {
+        return lastEventTime;
+    }
+
     /**
      * Fundamentally, this function defines how (complete) function call sequences map to patterns.
      */
     public void processEvent(int functionId, int dir, long time) {
+        lastEventTime = time;
         if (dir == Constants.FUNCTION_ENTER) {
-            SubtraceRepresentation newRepresentation = new SubtraceRepresentation(manager.getDistanceMap(), functionId);
-            RepresentationContainer container = new RepresentationContainer(newRepresentation, time);
+            // The container of each stack level is reused by every call at that level
             stackLevel++;
-            if (stackLevel < representationForLevel.size()) representationForLevel.set(stackLevel, container);
-            else representationForLevel.add(container);
+            if (stackLevel < representationForLevel.size()) {
+                representationForLevel.get(stackLevel).reset(functionId, time);
+            } else {
+                SubtraceRepresentation newRepresentation =
+                        new SubtraceRepresentation(manager.getDistanceMap(), functionId);
+                representationForLevel.add(new RepresentationContainer(newRepresentation, time));
+            }
         } else {
             // The highest sequence is finished. Update the set of patterns.
             RepresentationContainer container = representationForLevel.get(stackLevel);
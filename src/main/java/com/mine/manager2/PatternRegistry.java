@@ -0,0 +1,265 @@
+package com.mine.manager2;
+
+import com.mine.Constants;
+import com.mine.IntList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Holds the pattern shapes, and the distances between them, that are shared by every thread being mined. Pattern
+ * ids index into this registry. The instances of each pattern are kept separately by the PatternManager2 of each
+ * thread.
+ *
+ * Matching a subtrace against the existing patterns only reads the registry, so any number of threads can match
+ * at once under the read lock. Registering a new pattern, which also grows the distance map, takes the write lock.
+ *
+ * With a distance map that caps distances, a subtrace deeper than twice the cap can only be accepted by patterns
+ * strictly within the cap, since farther distances aren't known exactly.
+ *
+ * Matches are cached by the fingerprint of the subtrace. A cached match stays correct as patterns are added, since
+ * new patterns have higher ids than the pattern that was matched.
+ */
+public class PatternRegistry {
+
+    private static final int NO_PATTERN = -1;
+
+    private final DistanceMap distanceMap;
+    private final List<SubtraceRepresentation> patternRepresentations = new ArrayList<>();
+    private final PatternStore patternStore = new PatternStore();
+    private final ThreadLocal<DistanceKernel> distanceKernels;
+    private final PatternCandidateIndex candidateIndex;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final PatternIdSetInterner patternIdSets = new PatternIdSetInterner();
+    private final Map<RepresentationFingerprint, Integer> matchesByFingerprint = new ConcurrentHashMap<>();
+    private final LongAdder fingerprintHits = new LongAdder();
+    private final LongAdder fingerprintMisses = new LongAdder();
+
+    public PatternRegistry(DistanceMap distanceMap) {
+        this.distanceMap = distanceMap;
+        this.candidateIndex = new PatternCandidateIndex(distanceMap);
+        this.distanceKernels = ThreadLocal.withInitial(() -> new DistanceKernel(patternStore, distanceMap));
+        initializeNullPattern();
+    }
+
+    private void initializeNullPattern() {
+        SubtraceRepresentation nullRepresentation = new SubtraceRepresentation(distanceMap, Constants.NULL_FUNCTION_ID);
+        nullRepresentation.setDepth(0);
+
+        // Update distance map to include null pattern
+        DistanceKernel distanceKernel = distanceKernels.get();
+        distanceKernel.setQuery(nullRepresentation);
+        distanceMap.addPattern(nullRepresentation, distanceKernel);
+        patternStore.add(nullRepresentation);
+        patternRepresentations.add(nullRepresentation);
+        candidateIndex.add(Constants.NULL_PATTERN_ID, nullRepresentation);
+    }
+
+    public double getAcceptanceDistance(SubtraceRepresentation representation1, SubtraceRepresentation representation2) {
+        return Constants.NULL_FUNCTION_DISTANCE * Math.min(representation1.getDepth(), representation2.getDepth());
+    }
+
+    public DistanceMap getDistanceMap() {
+        return distanceMap;
+    }
+
+    public SubtraceRepresentation getRepresentation(int patternId) {
+        lock.readLock().lock();
+        try {
+            return patternRepresentations.get(patternId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a copy of the representations of all patterns registered so far, indexed by pattern id.
+     */
+    public List<SubtraceRepresentation> getRepresentations() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(patternRepresentations);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sets the depth of `newRepresentation`, and returns the id of the first pattern that accepts it. If no pattern
+     * accepts it, a copy of it is registered as a new pattern, so the caller is free to reuse it.
+     */
+    public int matchPattern(SubtraceRepresentation newRepresentation) {
+        RepresentationFingerprint fingerprint;
+        DistanceKernel distanceKernel = distanceKernels.get();
+        int scannedPatterns;
+        lock.readLock().lock();
+        try {
+            // Update depth
+            int maxDepth = 0;
+            PatternIdMultiset patternIds = newRepresentation.getPatternIds();
+            for (int i = 0; i < patternIds.size(); i++) {
+                maxDepth = Math.max(maxDepth, patternRepresentations.get(patternIds.getId(i)).getDepth());
+            }
+            newRepresentation.setDepth(maxDepth + 1);
+
+            fingerprint = new RepresentationFingerprint(newRepresentation, patternIdSets);
+            Integer cachedPatternId = matchesByFingerprint.get(fingerprint);
+            if (cachedPatternId != null) {
+                fingerprintHits.increment();
+                return cachedPatternId;
+            }
+            fingerprintMisses.increment();
+
+            distanceKernel.setQuery(newRepresentation);
+            int patternId = findAcceptingPattern(newRepresentation, distanceKernel, 0);
+            if (patternId != NO_PATTERN) {
+                matchesByFingerprint.putIfAbsent(fingerprint, patternId);
+                return patternId;
+            }
+            scannedPatterns = patternRepresentations.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        lock.writeLock().lock();
+        try {
+            // Other threads may have registered patterns while we weren't holding a lock
+            int patternId = findAcceptingPattern(newRepresentation, distanceKernel, scannedPatterns);
+            if (patternId == NO_PATTERN) patternId = addPattern(newRepresentation, distanceKernel);
+            matchesByFingerprint.putIfAbsent(fingerprint, patternId);
+            return patternId;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The number of matches answered from the fingerprint cache.
+     */
+    public long getFingerprintHits() {
+        return fingerprintHits.sum();
+    }
+
+    /**
+     * The number of matches that had to search the patterns.
+     */
+    public long getFingerprintMisses() {
+        return fingerprintMisses.sum();
+    }
+
+    /**
+     * Returns the lowest id, of at least `fromPatternId`, of a pattern that accepts `newRepresentation`, which is the
+     * query of `distanceKernel`.
+     */
+    private int findAcceptingPattern(
+            SubtraceRepresentation newRepresentation,
+            DistanceKernel distanceKernel,
+            int fromPatternId) {
+        // Every candidate has at least the depth of newRepresentation, so this is the acceptance distance for all of
+        // them. Patterns with another base function are too far away to be accepted unless it exceeds the function
+        // distance between them.
+        double acceptanceDistance = Constants.NULL_FUNCTION_DISTANCE * newRepresentation.getDepth();
+        int baseFunction = newRepresentation.getBaseFunction();
+        boolean nullFunctionCandidates = acceptanceDistance > Constants.NULL_FUNCTION_DISTANCE;
+        if (acceptanceDistance > Constants.FUNCTION_DISTANCE
+                || (baseFunction == Constants.NULL_FUNCTION_ID && nullFunctionCandidates)) {
+            return findAcceptingPattern(
+                    newRepresentation,
+                    distanceKernel,
+                    candidateIndex.getPatternIdsByDepth(),
+                    candidateIndex.getMetricTree(),
+                    fromPatternId,
+                    NO_PATTERN);
+        }
+
+        int patternId = findAcceptingPattern(
+                newRepresentation,
+                distanceKernel,
+                candidateIndex.getPatternIdsByDepth(baseFunction),
+                candidateIndex.getMetricTree(baseFunction),
+                fromPatternId,
+                NO_PATTERN);
+        if (nullFunctionCandidates && baseFunction != Constants.NULL_FUNCTION_ID) {
+            patternId = findAcceptingPattern(
+                    newRepresentation,
+                    distanceKernel,
+                    candidateIndex.getPatternIdsByDepth(Constants.NULL_FUNCTION_ID),
+                    candidateIndex.getMetricTree(Constants.NULL_FUNCTION_ID),
+                    fromPatternId,
+                    patternId);
+        }
+        return patternId;
+    }
+
+    /**
+     * Searches one group of candidates, given both by depth and as a metric tree, for patterns of at least the depth
+     * of `newRepresentation`. Returns the lowest id of a pattern that accepts it, or `acceptedPatternId` if that is
+     * lower.
+     */
+    private int findAcceptingPattern(
+            SubtraceRepresentation newRepresentation,
+            DistanceKernel distanceKernel,
+            List<IntList> candidatesByDepth,
+            MetricTree candidateTree,
+            int fromPatternId,
+            int acceptedPatternId) {
+        if (Constants.METRIC_TREE_INDEX) {
+            if (candidateTree == null) return acceptedPatternId;
+            // Candidates all have at least the depth of newRepresentation, so their acceptance distance is the same
+            double acceptanceDistance = Math.min(
+                    Constants.NULL_FUNCTION_DISTANCE * newRepresentation.getDepth(), distanceMap.getMaxDistance());
+            return candidateTree.findLowestWithin(
+                    distanceKernel,
+                    newRepresentation.getDepth(),
+                    acceptanceDistance,
+                    fromPatternId,
+                    acceptedPatternId);
+        }
+
+        for (int depth = newRepresentation.getDepth(); depth < candidatesByDepth.size(); depth++) {
+            IntList candidates = candidatesByDepth.get(depth);
+            for (int i = 0; i < candidates.size(); i++) {
+                int patternId = candidates.get(i);
+                if (patternId < fromPatternId) continue;
+                if (acceptedPatternId != NO_PATTERN && patternId > acceptedPatternId) break;
+                if (accepts(patternId, newRepresentation, distanceKernel)) {
+                    acceptedPatternId = patternId;
+                    break;
+                }
+            }
+        }
+        return acceptedPatternId;
+    }
+
+    private boolean accepts(int patternId, SubtraceRepresentation newRepresentation, DistanceKernel distanceKernel) {
+        SubtraceRepresentation representation = patternRepresentations.get(patternId);
+        // Accept subtrace only from patterns whose depths which are greater.
+        if (representation.getDepth() < newRepresentation.getDepth()) return false;
+        // Distances that reach the maximum distance are only known to be at least that far
+        double acceptanceDistance = Math.min(
+                getAcceptanceDistance(representation, newRepresentation), distanceMap.getMaxDistance());
+        return distanceKernel.getDistanceWithin(patternId, acceptanceDistance) < acceptanceDistance;
+    }
+
+    /**
+     * Must be called while holding the write lock, with `newRepresentation` as the query of `distanceKernel`.
+     */
+    private int addPattern(SubtraceRepresentation newRepresentation, DistanceKernel distanceKernel) {
+        newRepresentation = newRepresentation.copy();
+
+        // Update distanceMap
+        distanceMap.addPattern(newRepresentation, distanceKernel);
+        patternStore.add(newRepresentation);
+
+        // Update representation list
+        int newPatternId = patternRepresentations.size();
+        patternRepresentations.add(newRepresentation);
+        candidateIndex.add(newPatternId, newRepresentation);
+        return newPatternId;
+    }
+}
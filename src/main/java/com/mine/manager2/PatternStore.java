@@ -0,0 +1,71 @@
+package com.mine.manager2;
+
+import java.util.Arrays;
+
+/**
+ * The shapes of the registered patterns, kept column by column in flat arrays: the pattern ids of every pattern, one
+ * pattern after another, with the offset where each pattern's ids start, and the base function of every pattern.
+ * Scanning patterns in order then reads contiguous memory instead of chasing a representation per pattern.
+ *
+ * Like the rest of the PatternRegistry, it's only added to while holding the write lock.
+ */
+public class PatternStore {
+
+    private int[] patternIds = new int[256];
+    private int[] offsets = new int[65];
+    private int[] baseFunctions = new int[64];
+    private int size = 0;
+
+    /**
+     * Adds `representation` as the pattern with id `size()`.
+     */
+    public void add(SubtraceRepresentation representation) {
+        PatternIdMultiset representationPatternIds = representation.getPatternIds();
+        int start = offsets[size];
+        int end = start + representationPatternIds.size();
+        if (end > patternIds.length) {
+            patternIds = Arrays.copyOf(patternIds, Math.max(end, patternIds.length * 2));
+        }
+        for (int i = 0; i < representationPatternIds.size(); i++) {
+            patternIds[start + i] = representationPatternIds.getId(i);
+        }
+
+        if (size == baseFunctions.length) {
+            baseFunctions = Arrays.copyOf(baseFunctions, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 2 + 1);
+        }
+        baseFunctions[size] = representation.getBaseFunction();
+        offsets[size + 1] = end;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getBaseFunction(int patternId) {
+        return baseFunctions[patternId];
+    }
+
+    /**
+     * The index in `getPatternIds()` of the first pattern id of the given pattern.
+     */
+    public int getStart(int patternId) {
+        return offsets[patternId];
+    }
+
+    /**
+     * The index in `getPatternIds()` just past the last pattern id of the given pattern.
+     */
+    public int getEnd(int patternId) {
+        return offsets[patternId + 1];
+    }
+
+    /**
+     * The pattern ids of all patterns. The array is replaced as it grows, so it must not be held on to across
+     * additions.
+     */
+    public int[] getPatternIds() {
+        return patternIds;
+    }
+}
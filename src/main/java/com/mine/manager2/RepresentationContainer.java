@@ -2,7 +2,7 @@ package com.mine.manager2;
 
 public class RepresentationContainer {
 
-    private SubtraceRepresentation representation;
+    private final SubtraceRepresentation representation;
     private long startTime;
     private long endTime;
 
@@ -11,6 +11,15 @@ public class RepresentationContainer {
         this.startTime = startTime;
     }
 
+    /**
+     * Reuses this container, and its representation, for a new call to `functionId` starting at `startTime`.
+     */
+    public void reset(int functionId, long startTime) {
+        representation.reset(functionId);
+        this.startTime = startTime;
+        this.endTime = 0;
+    }
+
     public void setEndTime(long endTime) {
         this.endTime = endTime;
     }
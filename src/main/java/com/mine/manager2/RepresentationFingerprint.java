@@ -0,0 +1,36 @@
+package com.mine.manager2;
+
+/**
+ * Canonical key of a SubtraceRepresentation for exact matching: its base function, depth and set of pattern ids.
+ * Counts of the pattern ids are left out, since they don't affect distances. The set of pattern ids is interned, so
+ * fingerprints are compared and hashed in constant time.
+ */
+public class RepresentationFingerprint {
+
+    private final int baseFunction;
+    private final int depth;
+    private final PatternIdSet patternIds;
+    private final int hash;
+
+    public RepresentationFingerprint(SubtraceRepresentation representation, PatternIdSetInterner interner) {
+        this.baseFunction = representation.getBaseFunction();
+        this.depth = representation.getDepth();
+        this.patternIds = interner.intern(representation.getPatternIds());
+        this.hash = 31 * (31 * baseFunction + depth) + patternIds.getId();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RepresentationFingerprint)) return false;
+        RepresentationFingerprint other = (RepresentationFingerprint) o;
+        return baseFunction == other.baseFunction
+                && depth == other.depth
+                && patternIds == other.patternIds;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
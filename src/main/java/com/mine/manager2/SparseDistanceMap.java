@@ -0,0 +1,101 @@
+package com.mine.manager2;
+
+import java.util.Arrays;
+
+/**
+ * DistanceMap that only stores the distances below a cap, and reports every other distance as the cap. Patterns are
+ * accepted within NULL_FUNCTION_DISTANCE times their depth, so with a cap beyond that, distances that are never
+ * stored can't lead to a match anyway. Most patterns are far from each other, so memory grows with the number of
+ * near pairs rather than with the square of the number of patterns.
+ *
+ * The capped distance min(d, cap) is still a metric, and representations cap their distance to each other the same
+ * way (see SubtraceRepresentation), so the Hausdorff distance over capped distances is the capped Hausdorff
+ * distance, and the metric trees stay valid.
+ *
+ * Like in TriangularDistanceMap, row i covers patterns 0 to i - 1, but only holds the near ones, as sorted ids
+ * with their distances as floats. A row where most patterns are near is kept whole instead, since that takes no more
+ * memory than its ids would, and saves searching them.
+ */
+public class SparseDistanceMap implements DistanceMap {
+
+    private static final int[] NO_IDS = new int[0];
+    private static final float[] NO_DISTANCES = new float[0];
+
+    private final double maxDistance;
+    private int[][] rowIds = new int[16][];
+    private float[][] rowDistances = new float[16][];
+    private int size = 0;
+
+    public SparseDistanceMap(double maxDistance) {
+        this.maxDistance = maxDistance;
+    }
+
+    @Override
+    public double getDistance(int p1, int p2) {
+        if (p1 == p2) return 0.0;
+        if (p1 < p2) {
+            int swap = p1;
+            p1 = p2;
+            p2 = swap;
+        }
+        int[] ids = rowIds[p1];
+        if (ids == null) return rowDistances[p1][p2];
+        int index = Arrays.binarySearch(ids, p2);
+        return index >= 0 ? rowDistances[p1][index] : maxDistance;
+    }
+
+    @Override
+    public double getMaxDistance() {
+        return maxDistance;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void addPattern(SubtraceRepresentation representation, DistanceKernel kernel) {
+        addPattern(kernel.getDistances(size));
+    }
+
+    /**
+     * Adds the pattern with id `size()`, given its distances to patterns 0 to `size() - 1`. Its distance to itself is
+     * 0.
+     */
+    public void addPattern(double[] distances) {
+        if (distances.length != size) {
+            throw new IllegalArgumentException("Expected " + size + " distances, got " + distances.length);
+        }
+        int nearPatterns = 0;
+        for (double distance : distances) {
+            if (distance < maxDistance) nearPatterns++;
+        }
+        int[] ids = null;
+        float[] row;
+        if (nearPatterns * 2 > size) {
+            row = new float[size];
+            for (int patternId = 0; patternId < size; patternId++) {
+                row[patternId] = (float) Math.min(distances[patternId], maxDistance);
+            }
+        } else {
+            ids = nearPatterns > 0 ? new int[nearPatterns] : NO_IDS;
+            row = nearPatterns > 0 ? new float[nearPatterns] : NO_DISTANCES;
+            int i = 0;
+            for (int patternId = 0; patternId < size; patternId++) {
+                if (distances[patternId] < maxDistance) {
+                    ids[i] = patternId;
+                    row[i++] = (float) distances[patternId];
+                }
+            }
+        }
+
+        if (size == rowIds.length) {
+            rowIds = Arrays.copyOf(rowIds, size * 2);
+            rowDistances = Arrays.copyOf(rowDistances, size * 2);
+        }
+        rowIds[size] = ids;
+        rowDistances[size] = row;
+        size++;
+    }
+}
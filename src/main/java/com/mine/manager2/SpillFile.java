@@ -0,0 +1,48 @@
+package com.mine.manager2;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A temporary file of spilled intervals, shared by an IntervalList and the copies made of it. Each of them holds a
+ * reference, and the file is deleted once the last one is released, so a copy can still be read after the list it
+ * was copied from has been cleared. References are released from whichever thread dumps a copy.
+ */
+class SpillFile {
+
+    private final Path path;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    /**
+     * Creates an empty spill file in `directory`, referenced once by the caller.
+     */
+    static SpillFile create(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        return new SpillFile(Files.createTempFile(directory, "intervals", ".spill"));
+    }
+
+    private SpillFile(Path path) {
+        this.path = path;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    SpillFile retain() {
+        references.incrementAndGet();
+        return this;
+    }
+
+    void release() {
+        if (references.decrementAndGet() > 0) return;
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete spilled intervals", e);
+        }
+    }
+}
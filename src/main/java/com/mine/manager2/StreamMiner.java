@@ -0,0 +1,129 @@
+package com.mine.manager2;
+
+import com.mine.Constants;
+import com.mine.TraceReader;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mines events as they arrive on a TraceReader reading a trace that is still being written. The patterns mined so
+ * far are written to the stream patterns file in the pattern directory every `snapshotEvents` events, and every
+ * `snapshotNanos` after the last snapshot if events have been mined since. Snapshots are written in the background,
+ * and one is skipped if the previous one is still being written. Once the stream ends, the patterns are verified and
+ * written one last time.
+ *
+ * Reading the next event blocks for as long as the tracer takes to produce it, so snapshots that are due in time are
+ * taken by a timer thread. Events are mined while holding the lock that the timer takes to snapshot the manager.
+ */
+public class StreamMiner {
+
+    private final TraceReader reader;
+    private final PatternManager2 manager;
+    private final PatternMiner2 miner;
+    private final String patternDirectory;
+    private final String snapshotPath;
+    private final long snapshotEvents;
+    private final long snapshotNanos;
+    private final AsyncPatternWriter snapshotWriter = new AsyncPatternWriter();
+    private final Object lock = new Object();
+
+    // Guarded by lock
+    private long absoluteStartTime = 0;
+    private long count = 0;
+    private long eventsSinceSnapshot = 0;
+    private long lastSnapshotTime;
+
+    private volatile Exception snapshotFailure;
+
+    public StreamMiner(
+            TraceReader reader,
+            PatternManager2 manager,
+            String patternDirectory,
+            long snapshotEvents,
+            long snapshotNanos) {
+        this.reader = reader;
+        this.manager = manager;
+        this.miner = new PatternMiner2(manager);
+        this.patternDirectory = patternDirectory;
+        this.snapshotPath = patternDirectory + Constants.STREAM_PATTERNS_FILE;
+        this.snapshotEvents = snapshotEvents;
+        this.snapshotNanos = snapshotNanos;
+    }
+
+    /**
+     * Mines the stream to its end, then closes the reader. The distance map is left open.
+     */
+    public void run() throws IOException {
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "snapshot-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Snapshots are at most a tenth of the interval late
+        long tickNanos = Math.max(snapshotNanos / 10, TimeUnit.MILLISECONDS.toNanos(1));
+        lastSnapshotTime = System.nanoTime();
+        timer.scheduleWithFixedDelay(this::snapshotIfDue, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+
+        try {
+            while (reader.next()) {
+                synchronized (lock) {
+                    if (count == 0) absoluteStartTime = reader.getTime();
+                    count++;
+                    eventsSinceSnapshot++;
+                    miner.processEvent(reader.getFunctionId(), reader.getDir(), reader.getTime());
+                    if (eventsSinceSnapshot >= snapshotEvents) snapshot();
+                }
+                if (snapshotFailure != null) break;
+            }
+            // Interrupting a snapshot could close the channel it's spilling to, so one in progress is waited for
+            timer.shutdown();
+            awaitTermination(timer);
+            if (snapshotFailure != null) throw new IOException("Failed to write snapshot", snapshotFailure);
+
+            // The stream has ended, so every subtrace that will ever be closed is accounted for
+            if (count > 0) {
+                snapshotWriter.write(manager, absoluteStartTime, true, snapshotPath);
+                Main.writeMetadata(patternDirectory, absoluteStartTime, miner.getLastEventTime());
+            }
+        } finally {
+            timer.shutdown();
+            snapshotWriter.close();
+            reader.close();
+        }
+    }
+
+    private void snapshotIfDue() {
+        synchronized (lock) {
+            if (eventsSinceSnapshot == 0 || System.nanoTime() - lastSnapshotTime < snapshotNanos) return;
+            try {
+                snapshot();
+            } catch (IOException | RuntimeException e) {
+                snapshotFailure = e;
+            }
+        }
+    }
+
+    /**
+     * Queues a snapshot of the patterns mined so far, unless the previous one is still being written. Must be called
+     * holding the lock.
+     */
+    private void snapshot() throws IOException {
+        if (snapshotWriter.isBusy()) return;
+        System.out.println("Writing snapshot after " + count + " events");
+        snapshotWriter.write(manager.snapshot(), absoluteStartTime, false, snapshotPath);
+        Main.writeMetadata(patternDirectory, absoluteStartTime, miner.getLastEventTime());
+        eventsSinceSnapshot = 0;
+        lastSnapshotTime = System.nanoTime();
+    }
+
+    private static void awaitTermination(ScheduledExecutorService timer) throws IOException {
+        try {
+            timer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while stopping the snapshot timer", e);
+        }
+    }
+}
@@ -7,27 +7,48 @@ import org.json.JSONObject;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.TreeMap;
 
 public class SubtraceRepresentation {
 
     private final DistanceMap distanceMap;
-    private final TreeMap<Integer, Integer> patternIds = new TreeMap<>();
-    private final Integer baseFunction;
+    private final PatternIdMultiset patternIds;
+    private int baseFunction;
     private int depth;
 
     public SubtraceRepresentation(
             DistanceMap distanceMap,
-            Integer baseFunction) {
+            int baseFunction) {
         this.distanceMap = distanceMap;
+        this.patternIds = new PatternIdMultiset();
         this.baseFunction = baseFunction;
         addPatternId(Constants.NULL_PATTERN_ID);
     }
 
-    public void addPatternId(Integer patternId) {
-        patternIds.putIfAbsent(patternId, 0);
-        patternIds.put(patternId, patternIds.get(patternId) + 1);
+    private SubtraceRepresentation(SubtraceRepresentation representation) {
+        this.distanceMap = representation.distanceMap;
+        this.patternIds = representation.patternIds.copy();
+        this.baseFunction = representation.baseFunction;
+        this.depth = representation.depth;
+    }
+
+    /**
+     * Makes this the representation of a new call to `baseFunction`, as if it were just constructed. The miner reuses
+     * representations this way, so anything that keeps one beyond the call must keep a copy.
+     */
+    public void reset(int baseFunction) {
+        this.baseFunction = baseFunction;
+        this.depth = 0;
+        patternIds.clear();
+        addPatternId(Constants.NULL_PATTERN_ID);
+    }
+
+    public SubtraceRepresentation copy() {
+        return new SubtraceRepresentation(this);
+    }
+
+    public void addPatternId(int patternId) {
+        patternIds.add(patternId);
     }
 
     public void setDepth(int depth) {
@@ -42,12 +63,15 @@ public class SubtraceRepresentation {
         return depth;
     }
 
-    public Set<Integer> getPatternIds() {
-        return patternIds.keySet();
+    public PatternIdMultiset getPatternIds() {
+        return patternIds;
     }
 
+    /**
+     * A copy of the pattern ids and their counts, for consumers that need a map.
+     */
     public TreeMap<Integer, Integer> getPatternIdCounts() {
-        return patternIds;
+        return patternIds.toTreeMap();
     }
 
     /**
@@ -67,18 +91,22 @@ public class SubtraceRepresentation {
         double leftDistance = 0;
         double rightDistance = 0;
 
-        for (int thisPatternID : this.patternIds.keySet()) {
+        for (int i = 0; i < this.patternIds.size(); i++) {
+            int thisPatternID = this.patternIds.getId(i);
             double distanceToOther = Integer.MAX_VALUE;
-            for (int otherPatternID : other.patternIds.keySet()) {
+            for (int j = 0; j < other.patternIds.size(); j++) {
+                int otherPatternID = other.patternIds.getId(j);
                 double curDistance = distanceMap.getDistance(thisPatternID, otherPatternID);
                 if (curDistance < distanceToOther) distanceToOther = curDistance;
             }
             if (distanceToOther > leftDistance) leftDistance = distanceToOther;
         }
 
-        for (int otherPatternID : other.patternIds.keySet()) {
+        for (int i = 0; i < other.patternIds.size(); i++) {
+            int otherPatternID = other.patternIds.getId(i);
             double distanceToThis = Integer.MAX_VALUE;
-            for (int thisPatternID : this.patternIds.keySet()) {
+            for (int j = 0; j < this.patternIds.size(); j++) {
+                int thisPatternID = this.patternIds.getId(j);
                 double curDistance = distanceMap.getDistance(otherPatternID, thisPatternID);
                 if (curDistance < distanceToThis) distanceToThis = curDistance;
             }
@@ -87,7 +115,8 @@ public class SubtraceRepresentation {
 
         double patternSetDistance = Math.max(leftDistance, rightDistance);
         double functionDistance = getFunctionDistance(this.baseFunction, other.baseFunction);
-        return patternSetDistance + functionDistance;
+        // Keep to the same cap as the distances between patterns, so this stays consistent with them
+        return Math.min(patternSetDistance + functionDistance, distanceMap.getMaxDistance());
     }
 
     /**
@@ -95,7 +124,7 @@ public class SubtraceRepresentation {
      * distance 1.0 away, while null is some <= 1.0 distance away. We can verify easily
      * this forms a metric.
      */
-    private double getFunctionDistance(int f1, int f2) {
+    static double getFunctionDistance(int f1, int f2) {
         if (f1 == f2)
             return 0.0;
         else if (f1 == Constants.NULL_FUNCTION_ID || f2 == Constants.NULL_FUNCTION_ID)
@@ -119,7 +148,8 @@ public class SubtraceRepresentation {
 
         sb.append("[");
         List<String> patternIdStrings = new ArrayList<>(); // single function patterns will just use their base functions
-        for (int patternId : patternIds.keySet()) {
+        for (int i = 0; i < patternIds.size(); i++) {
+            int patternId = patternIds.getId(i);
             if (singleFunctionPatterns.containsKey(patternId)) {
                 patternIdStrings.add(String.valueOf(singleFunctionPatterns.get(patternId)));
             } else {
@@ -136,7 +166,8 @@ public class SubtraceRepresentation {
 
     public JSONObject serialize(Map<Integer, Integer> singleFunctionPatterns) {
         JSONArray patternIds = new JSONArray();
-        for (int patternId : this.patternIds.keySet()) {
+        for (int i = 0; i < this.patternIds.size(); i++) {
+            int patternId = this.patternIds.getId(i);
             if (patternId != Constants.NULL_PATTERN_ID) { // Don't bother adding the null pattern
                 if (singleFunctionPatterns.containsKey(patternId)) {
                     patternIds.put(singleFunctionPatterns.get(patternId));
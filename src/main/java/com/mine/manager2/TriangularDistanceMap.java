@@ -0,0 +1,80 @@
+package com.mine.manager2;
+
+import java.util.Arrays;
+
+/**
+ * DistanceMap backed by primitive arrays. Since the metric is symmetric, only the lower triangle is stored: row i
+ * holds the distances from pattern i to patterns 0 to i - 1. Adding a pattern appends one row without copying the
+ * existing ones, and no single array grows past the number of patterns.
+ *
+ * Distances can be stored with single precision to halve the memory. Distances between patterns are sums and
+ * maxima of function distances, which are multiples of NULL_FUNCTION_DISTANCE, so they are exact in a float too.
+ */
+public class TriangularDistanceMap implements DistanceMap {
+
+    private final boolean singlePrecision;
+    private double[][] rows = new double[16][];
+    private float[][] floatRows = new float[16][];
+    private int size = 0;
+
+    public TriangularDistanceMap(boolean singlePrecision) {
+        this.singlePrecision = singlePrecision;
+    }
+
+    @Override
+    public double getDistance(int p1, int p2) {
+        if (p1 == p2) return 0.0;
+        if (p1 < p2) {
+            int swap = p1;
+            p1 = p2;
+            p2 = swap;
+        }
+        return singlePrecision ? floatRows[p1][p2] : rows[p1][p2];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void addPattern(SubtraceRepresentation representation, DistanceKernel kernel) {
+        addPattern(kernel.getDistances(size));
+    }
+
+    /**
+     * Adds the pattern with id `size()`, given its distances to patterns 0 to `size() - 1`. Its distance to itself is
+     * 0.
+     */
+    public void addPattern(double[] distances) {
+        if (distances.length != size) {
+            throw new IllegalArgumentException("Expected " + size + " distances, got " + distances.length);
+        }
+        if (size == rows.length) {
+            rows = Arrays.copyOf(rows, size * 2);
+            floatRows = Arrays.copyOf(floatRows, size * 2);
+        }
+        if (singlePrecision) {
+            float[] row = new float[size];
+            for (int i = 0; i < size; i++) {
+                row[i] = (float) distances[i];
+            }
+            floatRows[size] = row;
+        } else {
+            rows[size] = distances.clone();
+        }
+        size++;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int p1 = 0; p1 < size; p1++) {
+            for (int p2 = 0; p2 < size; p2++) {
+                sb.append(getDistance(p1, p2));
+                sb.append("\t");
+            }
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+}
@@ -2,27 +2,52 @@ package com.mine.manager2.analyzer;
 
 import com.mine.Constants;
 import org.json.JSONArray;
-import org.json.JSONObject;
 import org.json.JSONTokener;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Analyzer {
 
     public void analyze() throws IOException {
         for (int i = Constants.START_THREAD; i <= Constants.END_THREAD; i++) {
-            BufferedReader reader = new BufferedReader(
-                    new FileReader(Constants.PATTERN_DIR + "thread." + i + ".patterns"));
-            JSONTokener tokener = new JSONTokener(reader);
-            JSONArray patterns = new JSONArray(tokener);
+            List<ParsedPattern> patterns = readPatterns(i);
 
             for (int j = 0; j < 40; j++) {
-                JSONObject serializedPattern = patterns.getJSONObject(j);
-                ParsedPattern parsedPattern = new ParsedPattern(serializedPattern);
+                ParsedPattern parsedPattern = patterns.get(j);
                 System.out.println(parsedPattern.prettyString());
             }
         }
     }
+
+    /**
+     * Reads the patterns of the given thread, preferring the binary pattern file if there is one.
+     */
+    static List<ParsedPattern> readPatterns(int thread) throws IOException {
+        List<ParsedPattern> patterns = new ArrayList<>();
+        String binaryPath = Constants.PATTERN_DIR + "thread." + thread + Constants.BINARY_PATTERN_EXTENSION;
+        if (new File(binaryPath).exists()) {
+            try (BinaryPatternReader reader = new BinaryPatternReader(binaryPath)) {
+                ParsedPattern pattern;
+                while ((pattern = reader.next()) != null) {
+                    patterns.add(pattern);
+                }
+            }
+            return patterns;
+        }
+
+        BufferedReader reader = new BufferedReader(
+                new FileReader(Constants.PATTERN_DIR + "thread." + thread + Constants.PATTERN_EXTENSION));
+        JSONTokener tokener = new JSONTokener(reader);
+        JSONArray serializedPatterns = new JSONArray(tokener);
+        reader.close();
+        for (int j = 0; j < serializedPatterns.length(); j++) {
+            patterns.add(new ParsedPattern(serializedPatterns.getJSONObject(j)));
+        }
+        return patterns;
+    }
 }
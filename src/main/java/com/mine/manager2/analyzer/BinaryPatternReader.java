@@ -0,0 +1,135 @@
+package com.mine.manager2.analyzer;
+
+import com.mine.VarintBuffer;
+import com.mine.manager2.BinaryPatternWriter;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+
+/**
+ * Reads pattern files written by {@link BinaryPatternWriter}. The pattern table is read up front, and each pattern
+ * is then read in turn as a ParsedPattern, the same view the analyzer gets from a JSON dump. Unless intervals are
+ * asked for, the interval blocks of a pattern are skipped by their length without being decoded.
+ */
+public class BinaryPatternReader implements Closeable {
+
+    private final DataInputStream in;
+    private final boolean readIntervals;
+    private final VarintBuffer buffer = new VarintBuffer();
+    private final int[] patternIds;
+    private final int[] depths;
+    private int index = 0;
+
+    public BinaryPatternReader(String path) throws IOException {
+        this(path, false);
+    }
+
+    public BinaryPatternReader(String path, boolean readIntervals) throws IOException {
+        this.readIntervals = readIntervals;
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(path), 1 << 16));
+        if (in.readInt() != BinaryPatternWriter.MAGIC) {
+            in.close();
+            throw new IOException("Not a binary pattern file: " + path);
+        }
+        int version = in.readInt();
+        if (version != BinaryPatternWriter.VERSION) {
+            in.close();
+            throw new IOException("Unsupported binary pattern file version " + version + ": " + path);
+        }
+
+        int patternCount = in.readInt();
+        patternIds = new int[patternCount];
+        depths = new int[patternCount];
+        for (int i = 0; i < patternCount; i++) {
+            patternIds[i] = in.readInt();
+            depths[i] = in.readInt();
+            in.readLong(); // Instance count
+        }
+    }
+
+    /**
+     * Reads the next pattern, or returns null once there are none left.
+     */
+    public ParsedPattern next() throws IOException {
+        if (index == patternIds.length) return null;
+        ParsedPattern pattern = new ParsedPattern(patternIds[index], depths[index]);
+        index++;
+
+        buffer.readFrom(in, in.readInt());
+        long baseFunctionCount = buffer.readUnsigned();
+        for (long i = 0; i < baseFunctionCount; i++) {
+            int baseFunction = (int) buffer.readSigned();
+            pattern.baseFunctionCounts.put(baseFunction, (int) buffer.readUnsigned());
+        }
+        long patternIdCount = buffer.readUnsigned();
+        for (long i = 0; i < patternIdCount; i++) {
+            int patternId = (int) buffer.readSigned();
+            pattern.patternIdCounts.put(patternId, (int) buffer.readUnsigned());
+        }
+
+        if (in.readBoolean()) {
+            pattern.durations = new LinkedHashMap<>();
+            for (String statistic : ParsedPattern.DURATION_STATISTICS) {
+                pattern.durations.put(statistic, in.readLong());
+            }
+        }
+
+        int intervals = in.readInt();
+        if (readIntervals) {
+            pattern.startTimes = new long[intervals];
+            pattern.endTimes = new long[intervals];
+        }
+        int read = 0;
+        while (read < intervals) {
+            int blockIntervals = in.readInt();
+            if (blockIntervals <= 0 || blockIntervals > intervals - read) {
+                throw new IOException("Corrupt interval block of " + blockIntervals + " intervals");
+            }
+            int blockBytes = in.readInt();
+            if (readIntervals) {
+                readBlock(pattern, read, blockIntervals, blockBytes);
+            } else {
+                skip(blockBytes);
+            }
+            read += blockIntervals;
+        }
+        return pattern;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Decodes a block of intervals into the intervals of `pattern` from index `first` on. Start times are deltas
+     * from the previous interval of the block, starting from 0.
+     */
+    private void readBlock(ParsedPattern pattern, int first, int blockIntervals, int blockBytes) throws IOException {
+        buffer.readFrom(in, blockBytes);
+        long startTime = 0;
+        for (int i = first; i < first + blockIntervals; i++) {
+            startTime += buffer.readSigned();
+            pattern.startTimes[i] = startTime;
+            pattern.endTimes[i] = startTime + buffer.readUnsigned();
+        }
+        if (buffer.hasRemaining()) {
+            throw new IOException("Corrupt interval block of " + blockIntervals + " intervals");
+        }
+    }
+
+    private void skip(int bytes) throws IOException {
+        while (bytes > 0) {
+            int skipped = in.skipBytes(bytes);
+            if (skipped == 0) {
+                in.readByte(); // Throws at the end of the file
+                skipped = 1;
+            }
+            bytes -= skipped;
+        }
+    }
+}
@@ -4,16 +4,34 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
-class ParsedPattern {
+/**
+ * A dumped pattern as the analyzer reads it. Intervals and duration statistics are only there if they were dumped,
+ * and for binary dumps, only if they were asked for.
+ */
+public class ParsedPattern {
+
+    /**
+     * The duration statistics, in the order they are dumped in.
+     */
+    public static final String[] DURATION_STATISTICS = {"count", "total", "min", "max", "p50", "p90", "p99"};
 
     int patternId;
     int depth;
     TreeMap<Integer, Integer> patternIdCounts = new TreeMap<>();
     TreeMap<Integer, Integer> baseFunctionCounts = new TreeMap<>();
+    LinkedHashMap<String, Long> durations; // Null if not dumped
+    long[] startTimes; // Relative to the start of the thread, null if not dumped
+    long[] endTimes;
+
+    ParsedPattern(int patternId, int depth) {
+        this.patternId = patternId;
+        this.depth = depth;
+    }
 
     ParsedPattern(JSONObject serializedObject) {
         patternId = serializedObject.getInt("id");
@@ -29,6 +47,87 @@ class ParsedPattern {
             JSONObject patternIdCount = serializedPatternIdCounts.getJSONObject(i);
             patternIdCounts.put(patternIdCount.getInt("patternId"), patternIdCount.getInt("count"));
         }
+        if (serializedObject.has("durations")) {
+            JSONObject serializedDurations = serializedObject.getJSONObject("durations");
+            durations = new LinkedHashMap<>();
+            for (String statistic : DURATION_STATISTICS) {
+                durations.put(statistic, serializedDurations.getLong(statistic));
+            }
+        }
+        if (serializedObject.has("intervals")) {
+            JSONArray serializedIntervals = serializedObject.getJSONArray("intervals");
+            startTimes = new long[serializedIntervals.length()];
+            endTimes = new long[serializedIntervals.length()];
+            for (int i = 0; i < serializedIntervals.length(); i++) {
+                JSONArray interval = serializedIntervals.getJSONArray(i);
+                startTimes[i] = interval.getLong(0);
+                endTimes[i] = interval.getLong(1);
+            }
+        }
+    }
+
+    /**
+     * The pattern as it is dumped in the JSON format, with whatever durations and intervals were read.
+     */
+    public JSONObject toJson() {
+        JSONObject serializedObject = new JSONObject();
+        if (durations != null) {
+            serializedObject.put("durations", new JSONObject(durations));
+        }
+        if (startTimes != null) {
+            JSONArray serializedIntervals = new JSONArray();
+            for (int i = 0; i < startTimes.length; i++) {
+                serializedIntervals.put(new JSONArray().put(startTimes[i]).put(endTimes[i]));
+            }
+            serializedObject.put("intervals", serializedIntervals);
+        }
+        serializedObject.put("id", patternId);
+        JSONObject serializedRepresentation = new JSONObject();
+        serializedRepresentation.put("depth", depth);
+        JSONArray serializedBaseFunctionCounts = new JSONArray();
+        for (Map.Entry<Integer, Integer> baseFunctionCount : baseFunctionCounts.entrySet()) {
+            serializedBaseFunctionCounts.put(new JSONObject()
+                    .put("count", baseFunctionCount.getValue())
+                    .put("baseFunction", baseFunctionCount.getKey()));
+        }
+        serializedRepresentation.put("baseFunctions", serializedBaseFunctionCounts);
+        JSONArray serializedPatternIdCounts = new JSONArray();
+        for (Map.Entry<Integer, Integer> patternIdCount : patternIdCounts.entrySet()) {
+            serializedPatternIdCounts.put(new JSONObject()
+                    .put("patternId", patternIdCount.getKey())
+                    .put("count", patternIdCount.getValue()));
+        }
+        serializedRepresentation.put("patternIds", serializedPatternIdCounts);
+        serializedObject.put("representation", serializedRepresentation);
+        return serializedObject;
+    }
+
+    public int getPatternId() {
+        return patternId;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public Map<Integer, Integer> getPatternIdCounts() {
+        return patternIdCounts;
+    }
+
+    public Map<Integer, Integer> getBaseFunctionCounts() {
+        return baseFunctionCounts;
+    }
+
+    public Map<String, Long> getDurations() {
+        return durations;
+    }
+
+    public long[] getStartTimes() {
+        return startTimes;
+    }
+
+    public long[] getEndTimes() {
+        return endTimes;
     }
 
     public String prettyString() {
@@ -0,0 +1,91 @@
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+
+import com.mine.manager2.AsyncPatternWriter;
+import com.mine.manager2.PatternManager2;
+import com.mine.manager2.PatternMiner2;
+import com.mine.manager2.TriangularDistanceMap;
+import org.junit.Test;
+
+public class AsyncPatternWriterTest {
+
+    @Test
+    public void testFailedDumpIsRethrownByClose() throws IOException {
+        Path directory = Files.createTempDirectory("patterns");
+        File target = directory.resolve("thread.1.patterns").toFile();
+        PatternManager2 manager = new PatternManager2(new TriangularDistanceMap(true)) {
+            @Override
+            public void dumpPatterns(BufferedWriter writer, Long absoluteStartTime, boolean verify)
+                    throws IOException {
+                writer.write("[");
+                writer.flush();
+                throw new IOException("Disk full");
+            }
+        };
+        RandomCalls.mine(new PatternMiner2(manager), 7, 6, 4, 1000);
+
+        AsyncPatternWriter patternWriter = new AsyncPatternWriter();
+        patternWriter.write(manager, 0, true, target.getPath());
+        IOException failure = assertThrows(IOException.class, patternWriter::close);
+        assertTrue(failure.getCause().getCause().getMessage().contains("Disk full"));
+        assertFalse(target.exists());
+        assertFalse(new File(target.getPath() + ".tmp").exists());
+        Files.delete(directory);
+    }
+
+    @Test(timeout = 10000)
+    public void testPendingWritesAreBounded() throws Exception {
+        Path directory = Files.createTempDirectory("patterns");
+        CountDownLatch dumpStarted = new CountDownLatch(1);
+        CountDownLatch dumpAllowed = new CountDownLatch(1);
+        PatternManager2 blockedManager = new PatternManager2(new TriangularDistanceMap(true)) {
+            @Override
+            public void dumpPatterns(BufferedWriter writer, Long absoluteStartTime, boolean verify)
+                    throws IOException {
+                dumpStarted.countDown();
+                try {
+                    dumpAllowed.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                super.dumpPatterns(writer, absoluteStartTime, verify);
+            }
+        };
+        RandomCalls.mine(new PatternMiner2(blockedManager), 7, 6, 4, 1000);
+        PatternManager2 manager = new PatternManager2(new TriangularDistanceMap(true));
+        RandomCalls.mine(new PatternMiner2(manager), 7, 6, 4, 1000);
+
+        AsyncPatternWriter patternWriter = new AsyncPatternWriter(1);
+        patternWriter.write(blockedManager, 0, true, directory.resolve("thread.1.patterns").toString());
+        dumpStarted.await();
+        // With one dump already pending, the next write waits for it to be written
+        Thread writing = new Thread(() -> {
+            try {
+                patternWriter.write(manager, 0, true, directory.resolve("thread.2.patterns").toString());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        writing.start();
+        writing.join(200);
+        assertTrue(writing.isAlive());
+
+        dumpAllowed.countDown();
+        writing.join();
+        patternWriter.close();
+        for (String file : new String[] {"thread.1.patterns", "thread.2.patterns"}) {
+            assertTrue(directory.resolve(file).toFile().exists());
+            Files.delete(directory.resolve(file));
+        }
+        Files.delete(directory);
+    }
+}
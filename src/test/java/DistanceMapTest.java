@@ -0,0 +1,135 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.mine.manager2.DistanceMap;
+import com.mine.manager2.LazyDistanceMap;
+import com.mine.manager2.MappedDistanceMap;
+import com.mine.manager2.PatternManager2;
+import com.mine.manager2.PatternMiner2;
+import com.mine.manager2.PatternRegistry;
+import com.mine.manager2.SparseDistanceMap;
+import com.mine.manager2.SubtraceRepresentation;
+import com.mine.manager2.TriangularDistanceMap;
+import org.junit.Test;
+
+public class DistanceMapTest {
+
+    @Test
+    public void testTriangularDistanceMap() {
+        for (boolean singlePrecision : new boolean[] {false, true}) {
+            TriangularDistanceMap distanceMap = new TriangularDistanceMap(singlePrecision);
+            addPatterns(distanceMap::addPattern, 0, 100);
+            assertDistances(distanceMap, 100);
+        }
+    }
+
+    @Test
+    public void testMappedDistanceMap() throws IOException {
+        Path directory = Files.createTempDirectory("distances");
+        MappedDistanceMap distanceMap = MappedDistanceMap.create(directory);
+        addPatterns(distanceMap::addPattern, 0, 100);
+        assertDistances(distanceMap, 100);
+        assertEquals(1, directory.toFile().list().length);
+
+        distanceMap.close();
+        assertEquals(0, directory.toFile().list().length);
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testLazyDistanceMapMatchesEager() {
+        DistanceMap eagerDistanceMap = new TriangularDistanceMap(false);
+        DistanceMap lazyDistanceMap = new LazyDistanceMap(2000); // Small enough that rows are evicted
+        RandomCalls.mine(new PatternMiner2(new PatternManager2(eagerDistanceMap)), 42, 8, 10, 20000);
+        RandomCalls.mine(new PatternMiner2(new PatternManager2(lazyDistanceMap)), 42, 8, 10, 20000);
+
+        int size = eagerDistanceMap.size();
+        assertEquals(size, lazyDistanceMap.size());
+        for (int p1 = 0; p1 < size; p1++) {
+            for (int p2 = 0; p2 < size; p2++) {
+                assertEquals(eagerDistanceMap.getDistance(p1, p2), lazyDistanceMap.getDistance(p1, p2));
+            }
+        }
+    }
+
+    @Test
+    public void testLazyDistanceMapSharedByThreads() throws Exception {
+        LazyDistanceMap lazyDistanceMap = new LazyDistanceMap(2000); // Small enough that rows are evicted
+        PatternRegistry registry = new PatternRegistry(lazyDistanceMap);
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        for (int seed = 0; seed < 4; seed++) {
+            final int threadSeed = seed;
+            Thread thread = new Thread(() ->
+                    RandomCalls.mine(new PatternMiner2(new PatternManager2(registry)), threadSeed, 8, 10, 20000));
+            thread.setUncaughtExceptionHandler((t, e) -> failures.add(e));
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(Collections.emptyList(), failures);
+
+        // Distinct patterns are never 0 apart, or one would have accepted the subtraces of the other
+        int size = lazyDistanceMap.size();
+        for (int p1 = 0; p1 < size; p1++) {
+            SubtraceRepresentation representation = registry.getRepresentation(p1);
+            for (int p2 = 0; p2 < p1; p2++) {
+                double distance = lazyDistanceMap.getDistance(p1, p2);
+                assertTrue(distance > 0);
+                assertEquals(representation.getDistance(registry.getRepresentation(p2)), distance);
+            }
+        }
+    }
+
+    @Test
+    public void testSparseDistanceMapCapsDistances() {
+        // Patterns mined from these calls are at most 11 deep, so they accept nothing 5.5 or more away
+        DistanceMap eagerDistanceMap = new TriangularDistanceMap(false);
+        DistanceMap sparseDistanceMap = new SparseDistanceMap(6.0);
+        RandomCalls.mine(new PatternMiner2(new PatternManager2(eagerDistanceMap)), 42, 8, 10, 20000);
+        RandomCalls.mine(new PatternMiner2(new PatternManager2(sparseDistanceMap)), 42, 8, 10, 20000);
+
+        int size = eagerDistanceMap.size();
+        assertEquals(size, sparseDistanceMap.size());
+        for (int p1 = 0; p1 < size; p1++) {
+            for (int p2 = 0; p2 < size; p2++) {
+                assertEquals(Math.min(eagerDistanceMap.getDistance(p1, p2), 6.0), sparseDistanceMap.getDistance(p1, p2));
+            }
+        }
+    }
+
+    private static void addPatterns(Consumer<double[]> distanceMap, int from, int to) {
+        for (int p1 = from; p1 < to; p1++) {
+            double[] distances = new double[p1];
+            for (int p2 = 0; p2 < p1; p2++) {
+                distances[p2] = distance(p1, p2);
+            }
+            distanceMap.accept(distances);
+        }
+    }
+
+    private static void assertDistances(DistanceMap distanceMap, int size) {
+        assertEquals(size, distanceMap.size());
+        for (int p1 = 0; p1 < size; p1++) {
+            for (int p2 = 0; p2 < size; p2++) {
+                assertEquals(p1 == p2 ? 0.0 : distance(Math.max(p1, p2), Math.min(p1, p2)),
+                        distanceMap.getDistance(p1, p2));
+            }
+        }
+    }
+
+    // Multiples of NULL_FUNCTION_DISTANCE, like real distances, so they are exact as floats
+    private static double distance(int p1, int p2) {
+        return 0.5 * ((p1 * 7 + p2 * 3) % 11 + 1);
+    }
+}
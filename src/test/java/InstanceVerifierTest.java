@@ -0,0 +1,99 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.mine.Constants;
+import com.mine.manager2.InstanceVerifier;
+import com.mine.manager2.PatternRegistry;
+import com.mine.manager2.RepresentationContainer;
+import com.mine.manager2.SubtraceRepresentation;
+import com.mine.manager2.TriangularDistanceMap;
+import org.junit.Test;
+
+public class InstanceVerifierTest {
+
+    private final PatternRegistry registry = new PatternRegistry(new TriangularDistanceMap(true));
+    // A call to function 0 without calls in it, and a call to function 1 with one such call in it
+    private final SubtraceRepresentation leaf = new SubtraceRepresentation(registry.getDistanceMap(), 0);
+    private final int leafId = registry.matchPattern(leaf);
+    private final SubtraceRepresentation parent = representation(1, leafId);
+    private final int parentId = registry.matchPattern(parent);
+
+    @Test
+    public void testDisjointInstances() {
+        for (Constants.VerificationLevel level : Constants.VerificationLevel.values()) {
+            InstanceVerifier verifier = new InstanceVerifier(level, registry);
+            for (int i = 0; i < 2 * Constants.VERIFICATION_SAMPLE_RATE; i++) {
+                verifier.addInstance(leafId, 1, container(leaf, 10 * i, 10 * i + 5));
+                verifier.addInstance(parentId, 2, container(parent, 10 * i, 10 * i + 5));
+                verifier.addPatternOnBase(parentId);
+            }
+            verifier.verifyOccurrenceCounts();
+            assertEquals(0, verifier.getFailureCount(), level.toString());
+        }
+    }
+
+    @Test
+    public void testOverlappingInstances() {
+        int instances = 2 * Constants.VERIFICATION_SAMPLE_RATE;
+        long[] expectedFailures = {0, 1, instances - 1}; // OFF, SAMPLED, FULL
+        for (Constants.VerificationLevel level : Constants.VerificationLevel.values()) {
+            InstanceVerifier verifier = new InstanceVerifier(level, registry);
+            for (int i = 0; i < instances; i++) {
+                verifier.addInstance(leafId, 1, container(leaf, 10 * i, 10 * i + 15));
+                verifier.addPatternOnBase(leafId);
+            }
+            verifier.verifyOccurrenceCounts();
+            assertEquals(expectedFailures[level.ordinal()], verifier.getFailureCount(), level.toString());
+        }
+    }
+
+    @Test
+    public void testOverlapsOnlyCountAtTheSameDepth() {
+        InstanceVerifier verifier = new InstanceVerifier(Constants.VerificationLevel.FULL, registry);
+        verifier.addInstance(leafId, 1, container(leaf, 0, 5));
+        verifier.addInstance(parentId, 2, container(parent, 0, 10));
+        verifier.addInstance(leafId, 1, container(leaf, 10, 15));
+        verifier.addInstance(parentId, 2, container(parent, 5, 20));
+        assertEquals(1, verifier.getFailureCount());
+    }
+
+    @Test
+    public void testConstituentsOfTheSameDepth() {
+        long[] expectedFailures = {0, 1, 2}; // OFF, SAMPLED, FULL
+        for (Constants.VerificationLevel level : Constants.VerificationLevel.values()) {
+            InstanceVerifier verifier = new InstanceVerifier(level, registry);
+            // Recorded as instances of depth 2 patterns, but with a constituent of depth 2 themselves
+            verifier.addInstance(parentId, 2, container(representation(2, parentId), 0, 5));
+            verifier.addInstance(parentId, 2, container(representation(2, parentId), 10, 15));
+            assertEquals(expectedFailures[level.ordinal()], verifier.getFailureCount(), level.toString());
+        }
+    }
+
+    @Test
+    public void testUnaccountedOccurrences() {
+        long[] expectedFailures = {0, 0, 1}; // OFF, SAMPLED, FULL
+        for (Constants.VerificationLevel level : Constants.VerificationLevel.values()) {
+            InstanceVerifier verifier = new InstanceVerifier(level, registry);
+            // The call to function 1 is still open, so the call in it isn't accounted for
+            verifier.addInstance(leafId, 1, container(leaf, 0, 5));
+            verifier.verifyOccurrenceCounts();
+            assertEquals(expectedFailures[level.ordinal()], verifier.getFailureCount(), level.toString());
+
+            verifier.clear();
+            verifier.verifyOccurrenceCounts();
+            assertEquals(0, verifier.getFailureCount(), level.toString());
+        }
+    }
+
+    private SubtraceRepresentation representation(int baseFunction, int patternId) {
+        SubtraceRepresentation representation = new SubtraceRepresentation(registry.getDistanceMap(), baseFunction);
+        representation.addPatternId(patternId);
+        return representation;
+    }
+
+    private static RepresentationContainer container(
+            SubtraceRepresentation representation, long startTime, long endTime) {
+        RepresentationContainer container = new RepresentationContainer(representation, startTime);
+        container.setEndTime(endTime);
+        return container;
+    }
+}
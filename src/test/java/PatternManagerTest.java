@@ -0,0 +1,199 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+
+import com.mine.Constants;
+import com.mine.manager2.BinaryPatternWriter;
+import com.mine.manager2.PatternManager2;
+import com.mine.manager2.PatternMiner2;
+import com.mine.manager2.PatternRegistry;
+import com.mine.manager2.TriangularDistanceMap;
+import com.mine.manager2.analyzer.BinaryPatternReader;
+import com.mine.manager2.analyzer.ParsedPattern;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class PatternManagerTest {
+
+    @Test
+    public void testSpilledInstancesDumpTheSame() throws IOException {
+        Path spillDirectory = Files.createTempDirectory("spill");
+        PatternManager2 manager = new PatternManager2(new TriangularDistanceMap(true));
+        PatternManager2 spillingManager = new PatternManager2(
+                new PatternRegistry(new TriangularDistanceMap(true)), Constants.InstanceMode.INTERVALS, 0,
+                spillDirectory);
+        RandomCalls.mine(new PatternMiner2(manager), 7, 6, 4, 5000);
+        RandomCalls.mine(new PatternMiner2(spillingManager), 7, 6, 4, 5000);
+
+        assertTrue(spillDirectory.toFile().list().length > 0);
+        assertEquals(dump(manager), dump(spillingManager));
+        spillingManager.resetPatterns();
+        assertEquals(0, spillDirectory.toFile().list().length);
+        Files.delete(spillDirectory);
+    }
+
+    @Test
+    public void testSnapshotOfSpilledManagerOutlivesIt() throws IOException {
+        Path spillDirectory = Files.createTempDirectory("spill");
+        PatternManager2 manager = new PatternManager2(new TriangularDistanceMap(true));
+        PatternManager2 spillingManager = new PatternManager2(
+                new PatternRegistry(new TriangularDistanceMap(true)), Constants.InstanceMode.INTERVALS, 0,
+                spillDirectory);
+        RandomCalls.mine(new PatternMiner2(manager), 7, 6, 4, 5000);
+        PatternMiner2 spillingMiner = new PatternMiner2(spillingManager);
+        RandomCalls.mine(spillingMiner, 7, 6, 4, 5000);
+        PatternManager2 snapshot = spillingManager.snapshot();
+
+        // The original keeps appending to the spill files it shares with the snapshot, and then lets go of them
+        long time = 1000000;
+        for (int i = 0; i < 1000; i++) {
+            spillingMiner.processEvent(0, Constants.FUNCTION_ENTER, time++);
+            spillingMiner.processEvent(0, 1, time++);
+        }
+        spillingManager.resetPatterns();
+        assertTrue(spillDirectory.toFile().list().length > 0);
+        for (int i = 0; i < 1000; i++) {
+            spillingMiner.processEvent(1, Constants.FUNCTION_ENTER, time++);
+            spillingMiner.processEvent(1, 1, time++);
+        }
+
+        assertEquals(dump(manager), dump(snapshot));
+        snapshot.resetPatterns();
+        spillingManager.resetPatterns();
+        assertEquals(0, spillDirectory.toFile().list().length);
+        Files.delete(spillDirectory);
+    }
+
+    @Test
+    public void testAggregateInstancesSummarizeIntervals() throws IOException {
+        Path spillDirectory = Paths.get(Constants.SPILL_DIR);
+        PatternManager2 manager = new PatternManager2(
+                new PatternRegistry(new TriangularDistanceMap(true)), Constants.InstanceMode.BOTH, 1L << 30,
+                spillDirectory);
+        PatternManager2 aggregateManager = new PatternManager2(
+                new PatternRegistry(new TriangularDistanceMap(true)), Constants.InstanceMode.AGGREGATE, 1L << 30,
+                spillDirectory);
+        RandomCalls.mine(new PatternMiner2(manager), 7, 6, 4, 5000);
+        RandomCalls.mine(new PatternMiner2(aggregateManager), 7, 6, 4, 5000);
+
+        JSONArray patterns = new JSONArray(dump(manager));
+        JSONArray aggregatePatterns = new JSONArray(dump(aggregateManager));
+        assertEquals(patterns.length(), aggregatePatterns.length());
+        for (int i = 0; i < patterns.length(); i++) {
+            JSONObject pattern = patterns.getJSONObject(i);
+            JSONObject aggregatePattern = aggregatePatterns.getJSONObject(i);
+            assertFalse(aggregatePattern.has("intervals"));
+            JSONObject durations = pattern.getJSONObject("durations");
+            assertEquals(durations.toString(), aggregatePattern.getJSONObject("durations").toString());
+
+            JSONArray intervals = pattern.getJSONArray("intervals");
+            long[] sortedDurations = new long[intervals.length()];
+            long total = 0;
+            for (int j = 0; j < intervals.length(); j++) {
+                JSONArray interval = intervals.getJSONArray(j);
+                sortedDurations[j] = interval.getLong(1) - interval.getLong(0);
+                total += sortedDurations[j];
+            }
+            Arrays.sort(sortedDurations);
+            assertEquals(sortedDurations.length, durations.getLong("count"));
+            assertEquals(total, durations.getLong("total"));
+            assertEquals(sortedDurations[0], durations.getLong("min"));
+            assertEquals(sortedDurations[sortedDurations.length - 1], durations.getLong("max"));
+            long median = sortedDurations[(sortedDurations.length + 1) / 2 - 1];
+            assertTrue(Math.abs(durations.getLong("p50") - median) <= median / 8);
+        }
+    }
+
+    @Test
+    public void testBinaryPatternsReadBackAsDumped() throws IOException {
+        PatternManager2 manager = new PatternManager2(
+                new PatternRegistry(new TriangularDistanceMap(true)), Constants.InstanceMode.BOTH, 1L << 30,
+                Paths.get(Constants.SPILL_DIR));
+        PatternMiner2 miner = new PatternMiner2(manager);
+        RandomCalls.mine(miner, 7, 6, 4, 5000);
+        // Enough instances of one pattern to take several interval blocks
+        long time = 1000000;
+        for (int i = 0; i < 3 * BinaryPatternWriter.BLOCK_SIZE; i++) {
+            miner.processEvent(0, Constants.FUNCTION_ENTER, time++);
+            miner.processEvent(1, Constants.FUNCTION_ENTER, time++);
+            time += i % 5;
+            miner.processEvent(1, 1, time++);
+            miner.processEvent(0, 1, time++);
+        }
+
+        long absoluteStartTime = 1000;
+        StringWriter dump = new StringWriter();
+        BufferedWriter writer = new BufferedWriter(dump);
+        manager.dumpPatterns(writer, absoluteStartTime);
+        writer.close();
+        JSONArray patterns = new JSONArray(dump.toString());
+        Path binaryDump = Files.createTempFile("thread", Constants.BINARY_PATTERN_EXTENSION);
+        try (BinaryPatternWriter binaryWriter = new BinaryPatternWriter(binaryDump.toString())) {
+            manager.dumpBinaryPatterns(binaryWriter, absoluteStartTime, true);
+        }
+
+        int maxIntervals = 0;
+        try (BinaryPatternReader reader = new BinaryPatternReader(binaryDump.toString(), true)) {
+            for (int i = 0; i < patterns.length(); i++) {
+                JSONObject pattern = patterns.getJSONObject(i);
+                JSONObject representation = pattern.getJSONObject("representation");
+                ParsedPattern parsedPattern = reader.next();
+                assertEquals(pattern.getInt("id"), parsedPattern.getPatternId());
+                assertEquals(representation.getInt("depth"), parsedPattern.getDepth());
+                assertCounts(representation.getJSONArray("baseFunctions"), "baseFunction",
+                        parsedPattern.getBaseFunctionCounts());
+                assertCounts(representation.getJSONArray("patternIds"), "patternId",
+                        parsedPattern.getPatternIdCounts());
+
+                JSONObject durations = pattern.getJSONObject("durations");
+                for (String statistic : ParsedPattern.DURATION_STATISTICS) {
+                    assertEquals(durations.getLong(statistic), (long) parsedPattern.getDurations().get(statistic));
+                }
+
+                JSONArray intervals = pattern.getJSONArray("intervals");
+                assertEquals(intervals.length(), parsedPattern.getStartTimes().length);
+                for (int j = 0; j < intervals.length(); j++) {
+                    assertEquals(intervals.getJSONArray(j).getLong(0), parsedPattern.getStartTimes()[j]);
+                    assertEquals(intervals.getJSONArray(j).getLong(1), parsedPattern.getEndTimes()[j]);
+                }
+                maxIntervals = Math.max(maxIntervals, intervals.length());
+
+                // Parsed again, so numbers that fit an int compare the same as they do in the dump. Pattern ids are
+                // read back in a different order, and their counts are compared above.
+                JSONObject convertedPattern = new JSONObject(parsedPattern.toJson().toString());
+                convertedPattern.getJSONObject("representation").remove("patternIds");
+                representation.remove("patternIds");
+                assertTrue(pattern.similar(convertedPattern));
+            }
+            assertEquals(null, reader.next());
+        }
+        Files.delete(binaryDump);
+        assertTrue(maxIntervals > 2 * BinaryPatternWriter.BLOCK_SIZE);
+    }
+
+    private static void assertCounts(JSONArray serializedCounts, String key, Map<Integer, Integer> counts) {
+        assertEquals(serializedCounts.length(), counts.size());
+        for (int i = 0; i < serializedCounts.length(); i++) {
+            JSONObject count = serializedCounts.getJSONObject(i);
+            assertEquals(count.getInt("count"), (int) counts.get(count.getInt(key)));
+        }
+    }
+
+    private static String dump(PatternManager2 manager) throws IOException {
+        StringWriter dump = new StringWriter();
+        BufferedWriter writer = new BufferedWriter(dump);
+        manager.dumpPatterns(writer, 0L);
+        writer.close();
+        return dump.toString();
+    }
+}
@@ -0,0 +1,50 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Random;
+
+import com.mine.Constants;
+import com.mine.manager2.PatternMiner2;
+
+/**
+ * Reproducible random traces of nested calls, for tests that need a miner to find realistic patterns.
+ */
+public class RandomCalls {
+
+    /**
+     * Receives the events of a random trace.
+     */
+    public interface EventSink {
+        void event(int functionId, int dir, long time) throws IOException;
+    }
+
+    /**
+     * Feeds `miner` `events` calls and returns into functions below `functions`, nested at most `maxDepth` deep,
+     * and then returns from every call still open. Events are one time unit apart, starting at 0.
+     */
+    public static void mine(PatternMiner2 miner, long seed, int maxDepth, int functions, int events) {
+        try {
+            generate(miner::processEvent, seed, maxDepth, functions, events);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Mining doesn't do IO
+        }
+    }
+
+    /**
+     * Hands `sink` the same events that `mine` feeds a miner.
+     */
+    public static void generate(EventSink sink, long seed, int maxDepth, int functions, int events)
+            throws IOException {
+        Random random = new Random(seed);
+        int[] stack = new int[maxDepth];
+        int depth = 0;
+        long time = 0;
+        for (int i = 0; i < events || depth > 0; i++) {
+            if (depth > 0 && (depth == stack.length || i >= events || random.nextBoolean())) {
+                sink.event(stack[--depth], 1, time++);
+            } else {
+                stack[depth] = random.nextInt(functions);
+                sink.event(stack[depth++], Constants.FUNCTION_ENTER, time++);
+            }
+        }
+    }
+}
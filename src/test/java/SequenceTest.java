@@ -1,10 +1,8 @@
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintStream;
@@ -163,7 +161,7 @@ public class SequenceTest {
      * @param manager manager we collected the mined data into.
      */
     private void mine(String testFile, PatternManager manager) throws IOException {
-        BufferedReader reader = new BufferedReader(new FileReader(Constants.TEST_DATA_DIR + testFile));
+        TraceReader reader = new MappedTraceReader(Constants.TEST_DATA_DIR + testFile);
         PatternMiner miner = new PatternMiner(manager);
         miner.mineThread(reader);
         reader.close();
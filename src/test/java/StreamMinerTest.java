@@ -0,0 +1,96 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.mine.Constants;
+import com.mine.StreamTraceReader;
+import com.mine.manager2.PatternManager2;
+import com.mine.manager2.PatternMiner2;
+import com.mine.manager2.PatternRegistry;
+import com.mine.manager2.StreamMiner;
+import com.mine.manager2.TriangularDistanceMap;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class StreamMinerTest {
+
+    @Test(timeout = 30000)
+    public void testSnapshotsOfIdleStream() throws Exception {
+        Path directory = Files.createTempDirectory("stream");
+        String patternDirectory = directory + File.separator;
+        File snapshot = new File(patternDirectory + Constants.STREAM_PATTERNS_FILE);
+        PatternManager2 manager = new PatternManager2(
+                new PatternRegistry(new TriangularDistanceMap(true)), Constants.InstanceMode.INTERVALS, 1L << 30,
+                directory.resolve("spill"));
+        PipedInputStream pipe = new PipedInputStream(1 << 16);
+        Writer tracer = new BufferedWriter(
+                new OutputStreamWriter(new PipedOutputStream(pipe), StandardCharsets.US_ASCII));
+
+        // Only the timer can snapshot, since far fewer events are written than would trigger one
+        StreamMiner streamMiner = new StreamMiner(new StreamTraceReader(pipe), manager, patternDirectory,
+                Long.MAX_VALUE, TimeUnit.MILLISECONDS.toNanos(50));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Void> mining = executor.submit(() -> {
+            streamMiner.run();
+            return null;
+        });
+
+        // The tracer goes idle after the first events, which must still be snapshot
+        RandomCalls.generate((functionId, dir, time) -> writeEvent(tracer, functionId, dir, time), 7, 6, 4, 5000);
+        tracer.flush();
+        while (!snapshot.exists()) {
+            Thread.sleep(10);
+        }
+        assertTrue(new JSONArray(new String(Files.readAllBytes(snapshot.toPath()))).length() > 0);
+
+        for (long time = 1000000; time < 1004000; time += 2) {
+            writeEvent(tracer, 0, Constants.FUNCTION_ENTER, time);
+            writeEvent(tracer, 0, 1, time + 1);
+        }
+        tracer.close();
+        mining.get();
+        executor.shutdown();
+
+        // The last dump holds every event, as if the trace had been mined in one go
+        PatternManager2 expectedManager = new PatternManager2(new TriangularDistanceMap(true));
+        PatternMiner2 miner = new PatternMiner2(expectedManager);
+        RandomCalls.mine(miner, 7, 6, 4, 5000);
+        for (long time = 1000000; time < 1004000; time += 2) {
+            miner.processEvent(0, Constants.FUNCTION_ENTER, time);
+            miner.processEvent(0, 1, time + 1);
+        }
+        StringWriter expected = new StringWriter();
+        BufferedWriter writer = new BufferedWriter(expected);
+        expectedManager.dumpPatterns(writer, 0L);
+        writer.close();
+        assertEquals(expected.toString(), new String(Files.readAllBytes(snapshot.toPath())));
+
+        JSONObject metadata = new JSONObject(new String(Files.readAllBytes(directory.resolve("metadata"))));
+        assertEquals(1003999, metadata.getLong("duration"));
+        assertEquals(0, directory.resolve("spill").toFile().list().length);
+        Files.delete(directory.resolve("spill"));
+        Files.delete(snapshot.toPath());
+        Files.delete(directory.resolve("metadata"));
+        Files.delete(directory);
+    }
+
+    private static void writeEvent(Writer tracer, int functionId, int dir, long time) throws IOException {
+        tracer.write(functionId + "\t" + dir + "\t" + time + "\t0\n");
+    }
+}
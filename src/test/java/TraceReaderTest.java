@@ -0,0 +1,170 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.mine.*;
+import org.junit.Test;
+
+public class TraceReaderTest {
+
+    @Test
+    public void testMappedTraceReader() throws IOException {
+        List<long[]> events = readAll(new MappedTraceReader(Constants.TEST_DATA_DIR + "test1"));
+        assertEquals(events.size(), 9);
+        assertEquals(events.get(1)[0], 1); // Trailing tab on this line
+        assertEquals(events.get(3)[0], 2);
+        assertEquals(events.get(3)[1], 1);
+    }
+
+    @Test
+    public void testBinaryTraceRoundTrip() throws IOException {
+        File binaryTrace = File.createTempFile("thread", Constants.BINARY_TRACE_EXTENSION);
+        binaryTrace.deleteOnExit();
+
+        // Enough events to span multiple blocks, with timestamps that occasionally go backwards
+        List<long[]> expected = new ArrayList<>();
+        try (BinaryTraceWriter writer = new BinaryTraceWriter(binaryTrace.getPath())) {
+            long time = 1500000000000000000L;
+            for (int i = 0; i < 150000; i++) {
+                long[] event = {i % 1000, i % 2, time, i % 7};
+                time += i % 11 == 0 ? -3 : 250;
+                writer.write((int) event[0], (int) event[1], event[2], event[3]);
+                expected.add(event);
+            }
+        }
+
+        List<long[]> actual = readAll(new BinaryTraceReader(binaryTrace.getPath()));
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            for (int j = 0; j < 4; j++) {
+                assertEquals(expected.get(i)[j], actual.get(i)[j]);
+            }
+        }
+    }
+
+    @Test
+    public void testConvertedTraceMatchesText() throws IOException {
+        File binaryTrace = File.createTempFile("thread", Constants.BINARY_TRACE_EXTENSION);
+        binaryTrace.deleteOnExit();
+        BinaryTraceWriter.convert(Constants.TEST_DATA_DIR + "test1", binaryTrace.getPath());
+
+        TraceReader textReader = new MappedTraceReader(Constants.TEST_DATA_DIR + "test1");
+        TraceReader binaryReader = new BinaryTraceReader(binaryTrace.getPath());
+        while (textReader.next()) {
+            assertTrue(binaryReader.next());
+            assertEquals(textReader.getFunctionId(), binaryReader.getFunctionId());
+            assertEquals(textReader.getDir(), binaryReader.getDir());
+            assertEquals(textReader.getTime(), binaryReader.getTime());
+            assertEquals(textReader.getDuration(), binaryReader.getDuration());
+        }
+        assertFalse(binaryReader.next());
+        textReader.close();
+        binaryReader.close();
+        assertFalse(new File(binaryTrace.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void testFailedConversionLeavesNoBinaryTrace() throws IOException {
+        File trace = File.createTempFile("thread", Constants.TRACE_EXTENSION);
+        trace.deleteOnExit();
+        File binaryTrace = new File(trace.getPath() + Constants.BINARY_TRACE_EXTENSION);
+        // Several blocks convert before the event that can't be encoded
+        try (FileWriter writer = new FileWriter(trace)) {
+            for (int i = 0; i < 200000; i++) {
+                writer.write(i % 10 + "\t" + i % 2 + "\t" + i + "\t0\n");
+            }
+            writer.write("0\t2\t200000\t0\n");
+        }
+
+        assertThrows(IllegalArgumentException.class,
+                () -> BinaryTraceWriter.convert(trace.getPath(), binaryTrace.getPath()));
+        assertFalse(binaryTrace.exists());
+        assertFalse(new File(binaryTrace.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void testPipelinedTraceReader() throws IOException {
+        File binaryTrace = File.createTempFile("thread", Constants.BINARY_TRACE_EXTENSION);
+        binaryTrace.deleteOnExit();
+        try (BinaryTraceWriter writer = new BinaryTraceWriter(binaryTrace.getPath())) {
+            for (int i = 0; i < 100000; i++) {
+                writer.write(i % 1000, i % 2, i, 0);
+            }
+        }
+
+        List<long[]> expected = readAll(new BinaryTraceReader(binaryTrace.getPath()));
+        List<long[]> actual = readAll(new PipelinedTraceReader(new BinaryTraceReader(binaryTrace.getPath())));
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            for (int j = 0; j < 4; j++) {
+                assertEquals(expected.get(i)[j], actual.get(i)[j]);
+            }
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testPipelinedTraceReaderFailure() throws IOException {
+        // Fails partway through the third batch, as a corrupt binary trace might
+        int events = 10000;
+        RuntimeException failure = new IllegalStateException("Corrupt trace");
+        TraceReader source = new TraceReader() {
+            private int event = -1;
+
+            @Override
+            public boolean next() {
+                if (++event == events) throw failure;
+                return true;
+            }
+
+            @Override
+            public int getFunctionId() {
+                return event;
+            }
+
+            @Override
+            public int getDir() {
+                return 0;
+            }
+
+            @Override
+            public long getTime() {
+                return event;
+            }
+
+            @Override
+            public long getDuration() {
+                return 0;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        PipelinedTraceReader reader = new PipelinedTraceReader(source);
+        for (int i = 0; i < events; i++) {
+            assertTrue(reader.next());
+            assertEquals(i, reader.getFunctionId());
+        }
+        assertSame(failure, assertThrows(IllegalStateException.class, reader::next));
+        assertFalse(reader.next());
+        reader.close();
+    }
+
+    private List<long[]> readAll(TraceReader reader) throws IOException {
+        List<long[]> events = new ArrayList<>();
+        while (reader.next()) {
+            events.add(new long[] {reader.getFunctionId(), reader.getDir(), reader.getTime(), reader.getDuration()});
+        }
+        reader.close();
+        return events;
+    }
+}